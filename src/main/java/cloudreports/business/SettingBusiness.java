@@ -20,6 +20,7 @@
 package cloudreports.business;
 
 import cloudreports.dao.SettingDAO;
+import cloudreports.database.HibernateUtil;
 import cloudreports.models.Setting;
 
 /**
@@ -33,6 +34,42 @@ public class SettingBusiness {
     
     private static SettingDAO settingDAO = new SettingDAO();
     
+    /** The settings of the active database, read at the start of a run. */
+    private static SettingsSnapshot snapshot;
+    
+    /** The current simulation, as last written to the active database. */
+    private static Integer currentSimulation;
+    
+    /** The database the current simulation was read from or written to. */
+    private static String currentSimulationDatabase;
+    
+    /** 
+     * Gets the settings of the active database. They are read from the
+     * database the first time they are needed, and again only after
+     * {@link #invalidateSnapshot()} is called or the active database changes.
+     *
+     * @return  the settings of the active database.
+     * @since   1.2
+     */
+    public static synchronized SettingsSnapshot getSnapshot() {
+        String activeDatabase = HibernateUtil.getActiveDatabase();
+        if (snapshot == null || !snapshot.getDatabase().equals(activeDatabase)) {
+            snapshot = new SettingsSnapshot(activeDatabase);
+        }
+        return snapshot;
+    }
+    
+    /** 
+     * Discards the settings read so far, so that they are read again from
+     * the database. It must be called whenever settings are edited.
+     *
+     * @since   1.2
+     */
+    public static synchronized void invalidateSnapshot() {
+        snapshot = null;
+        currentSimulation = null;
+    }
+    
     public static boolean isMailNotificationEnabled() {
         String settingValue = settingDAO.getSetting("EnableMailNotification").getValue();
         return Boolean.valueOf(settingValue);
@@ -42,14 +79,21 @@ public class SettingBusiness {
         return Integer.valueOf(settingDAO.getSetting("NumberOfSimulations").getValue());
     }
     
-    public static void setCurrentSimulation(int simulationId) {
-        Setting currentSimulation = settingDAO.getSetting("CurrentSimulation");
-        currentSimulation.setValue(String.valueOf(simulationId));
-        settingDAO.updateSetting(currentSimulation);
+    public static synchronized void setCurrentSimulation(int simulationId) {
+        Setting currentSimulationSetting = settingDAO.getSetting("CurrentSimulation");
+        currentSimulationSetting.setValue(String.valueOf(simulationId));
+        settingDAO.updateSetting(currentSimulationSetting);
+        currentSimulation = simulationId;
+        currentSimulationDatabase = HibernateUtil.getActiveDatabase();
     }
     
-    public static int getCurrentSimulation() {
-        return Integer.valueOf(settingDAO.getSetting("CurrentSimulation").getValue());
+    public static synchronized int getCurrentSimulation() {
+        String activeDatabase = HibernateUtil.getActiveDatabase();
+        if (currentSimulation == null || !activeDatabase.equals(currentSimulationDatabase)) {
+            currentSimulation = Integer.valueOf(settingDAO.getSetting("CurrentSimulation").getValue());
+            currentSimulationDatabase = activeDatabase;
+        }
+        return currentSimulation;
     }
     
     public static String getQRBGUsername() {
@@ -89,4 +133,24 @@ public class SettingBusiness {
         else return Boolean.valueOf(rawDataReportsEnabled.getValue());
     }
     
+    public static boolean isColumnarMetricsEnabled() {
+        Setting columnarMetricsEnabled = settingDAO.getSetting("ColumnarMetrics");
+        if (columnarMetricsEnabled == null) {
+            columnarMetricsEnabled = new Setting("ColumnarMetrics", "false");
+            settingDAO.insertSetting(columnarMetricsEnabled);
+            return false;
+        }
+        else return Boolean.valueOf(columnarMetricsEnabled.getValue());
+    }
+    
+    public static boolean isSteadyStateWorkloadEnabled() {
+        Setting steadyStateWorkloadEnabled = settingDAO.getSetting("SteadyStateWorkload");
+        if (steadyStateWorkloadEnabled == null) {
+            steadyStateWorkloadEnabled = new Setting("SteadyStateWorkload", "false");
+            settingDAO.insertSetting(steadyStateWorkloadEnabled);
+            return false;
+        }
+        else return Boolean.valueOf(steadyStateWorkloadEnabled.getValue());
+    }
+    
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.business;
+
+/**
+ * An immutable copy of the settings of an environment, read once from its
+ * database.
+ * Simulation code reads settings from a snapshot instead of querying the
+ * database every time a setting is needed.
+ *
+ * @see         SettingBusiness#getSnapshot()
+ * @since       1.2
+ */
+public final class SettingsSnapshot {
+
+    /** The database the settings were read from. */
+    private final String database;
+
+    /** The number of times each simulation is repeated. */
+    private final int numberOfSimulations;
+
+    /** The simulation time, in minutes. */
+    private final int timeToSimulate;
+
+    /** The source of random numbers. */
+    private final int randomnessOption;
+
+    /** Indicates whether mail notifications are enabled. */
+    private final boolean mailNotificationEnabled;
+
+    /** Indicates whether HTML reports are enabled. */
+    private final boolean htmlReportsEnabled;
+
+    /** Indicates whether raw data reports are enabled. */
+    private final boolean rawDataReportsEnabled;
+
+    /** Indicates whether metrics are stored in columnar files. */
+    private final boolean columnarMetricsEnabled;
+
+    /** Indicates whether brokers only keep statistics of finished cloudlets. */
+    private final boolean steadyStateWorkloadEnabled;
+
+    /**
+     * Reads the settings of the active database.
+     *
+     * @param   database    the name of the active database.
+     * @since               1.2
+     */
+    SettingsSnapshot(String database) {
+        this.database = database;
+        this.numberOfSimulations = SettingBusiness.getNumberOfSimulations();
+        this.timeToSimulate = SettingBusiness.getTimeToSimulate();
+        this.randomnessOption = SettingBusiness.getRandomnessOption();
+        this.mailNotificationEnabled = SettingBusiness.isMailNotificationEnabled();
+        this.htmlReportsEnabled = SettingBusiness.isHtmlReportsEnabled();
+        this.rawDataReportsEnabled = SettingBusiness.isRawDataReportsEnabled();
+        this.columnarMetricsEnabled = SettingBusiness.isColumnarMetricsEnabled();
+        this.steadyStateWorkloadEnabled = SettingBusiness.isSteadyStateWorkloadEnabled();
+    }
+
+    /**
+     * Gets the database the settings were read from.
+     *
+     * @return  the name of the database.
+     * @since   1.2
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * Gets the number of times each simulation is repeated.
+     *
+     * @return  the number of simulations.
+     * @since   1.2
+     */
+    public int getNumberOfSimulations() {
+        return numberOfSimulations;
+    }
+
+    /**
+     * Gets the simulation time.
+     *
+     * @return  the simulation time, in minutes.
+     * @since   1.2
+     */
+    public int getTimeToSimulate() {
+        return timeToSimulate;
+    }
+
+    /**
+     * Gets the source of random numbers.
+     *
+     * @return  the randomness option.
+     * @since   1.2
+     */
+    public int getRandomnessOption() {
+        return randomnessOption;
+    }
+
+    /**
+     * Indicates whether mail notifications are enabled.
+     *
+     * @return  <code>true</code> if mail notifications are enabled;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isMailNotificationEnabled() {
+        return mailNotificationEnabled;
+    }
+
+    /**
+     * Indicates whether HTML reports are enabled.
+     *
+     * @return  <code>true</code> if HTML reports are enabled;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isHtmlReportsEnabled() {
+        return htmlReportsEnabled;
+    }
+
+    /**
+     * Indicates whether raw data reports are enabled.
+     *
+     * @return  <code>true</code> if raw data reports are enabled;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isRawDataReportsEnabled() {
+        return rawDataReportsEnabled;
+    }
+
+    /**
+     * Indicates whether metrics are stored in columnar files.
+     *
+     * @return  <code>true</code> if columnar metrics are enabled;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isColumnarMetricsEnabled() {
+        return columnarMetricsEnabled;
+    }
+
+    /**
+     * Indicates whether brokers only keep statistics of finished cloudlets
+     * instead of the cloudlets themselves.
+     *
+     * @return  <code>true</code> if the steady-state workload mode is
+     *          enabled; <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isSteadyStateWorkloadEnabled() {
+        return steadyStateWorkloadEnabled;
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+import cloudreports.database.HibernateUtil;
+import cloudreports.utils.FileIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An alternative storage for report data that keeps each series of samples,
+ * i.e. each (entity, resource type) pair, in its own memory-mapped file.
+ * Every sample takes 12 bytes: the time elapsed since the previous sample of
+ * the series as a float, followed by the amount of used resources as a
+ * double. Elapsed times that a float cannot hold exactly are stored as a
+ * marker followed by a double, so no precision is lost.
+ * Reading a series is a sequential scan of its file.
+ * <p>
+ * Files are mapped in fixed-size segments. A file grows by mapping a new
+ * segment after the last one, so segments that are already mapped are never
+ * remapped. Series are closed when their data is removed or another
+ * database becomes active: their segments are unmapped and their files are
+ * truncated to the bytes actually used.
+ * <p>
+ * Files are kept in the <code>db/&lt;environment&gt;.series</code> directory
+ * and are removed along with the rest of the temporary report data.
+ * If the running virtual machine does not allow buffers to be unmapped,
+ * files are neither truncated nor removed, since their mappings are only
+ * released when the buffers are garbage collected. A new series then
+ * overwrites the file of the same name.
+ *
+ * @see         ReportDataDAO
+ * @see         cloudreports.business.SettingBusiness#isColumnarMetricsEnabled()
+ * @since       1.2
+ */
+public class ColumnarReportDataStore {
+
+    /** The size of a mapped segment of a series file, in bytes. */
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    /** The largest size of a sample, in bytes. */
+    private static final int MAX_SAMPLE_SIZE = 20;
+
+    /**
+     * The marker of a sample whose elapsed time is stored as a double. It is
+     * a NaN that {@link Float#floatToIntBits(float)} never returns.
+     */
+    private static final int WIDE_DELTA = 0x7fc00001;
+
+    /**
+     * The marker of the end of the samples of a segment. It is a NaN that
+     * {@link Float#floatToIntBits(float)} never returns.
+     */
+    private static final int END_OF_SEGMENT = 0x7fc00002;
+
+    /** Indicates whether report data is stored by this class. */
+    private static boolean enabled;
+
+    /** The series of the active database, by key. */
+    private static Map<String, Series> series = new HashMap<String, Series>();
+
+    /** The series of the active database, by entity and resource type. */
+    private static Map<String, Map<String, Series>> seriesByEntity = new HashMap<String, Map<String, Series>>();
+
+    /** The database the series belong to. */
+    private static String seriesDatabase;
+
+    /**
+     * Indicates whether a buffer could not be unmapped, so files may still
+     * be mapped after their series were closed.
+     */
+    private static boolean unmapFailed;
+
+    /**
+     * Indicates whether report data is stored by this class instead of the
+     * ReportData table.
+     *
+     * @return  <code>true</code> if the columnar storage is enabled;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the columnar storage.
+     *
+     * @param   isEnabled   indicates whether the columnar storage must be
+     *                      used or not.
+     * @since               1.2
+     */
+    public static void setEnabled(boolean isEnabled) {
+        enabled = isEnabled;
+    }
+
+    /**
+     * Appends a sample to a series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter, if any.
+     * @param   customerName    the name of the customer, if any.
+     * @param   hostId          the id of the host, if any.
+     * @param   vmId            the id of the virtual machine, if any.
+     * @param   time            the instant of time which the sample refers to.
+     * @param   amount          the amount of used resources at <code>time</code>.
+     * @since                   1.2
+     */
+    public static synchronized void append(String type, String datacenterName, String customerName,
+                                           Integer hostId, Integer vmId, double time, double amount) {
+        String key = getKey(type, datacenterName, customerName, hostId, vmId);
+        Series s = getSeriesMap().get(key);
+        try {
+            if (s == null) {
+                s = new Series(new File(getDirectory(), "series" + series.size() + ".dat"));
+                series.put(key, s);
+
+                String entityKey = getEntityKey(datacenterName, customerName, hostId, vmId);
+                Map<String, Series> entitySeries = seriesByEntity.get(entityKey);
+                if (entitySeries == null) {
+                    entitySeries = new HashMap<String, Series>();
+                    seriesByEntity.put(entityKey, entitySeries);
+                }
+                entitySeries.put(type, s);
+            }
+            s.append(time, amount);
+        } catch (IOException ex) {
+            Logger.getLogger(ColumnarReportDataStore.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Reads a series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter, if any.
+     * @param   customerName    the name of the customer, if any.
+     * @param   hostId          the id of the host, if any.
+     * @param   vmId            the id of the virtual machine, if any.
+     * @return                  a map with values of time as keys and amounts
+     *                          of used resources as values; an empty map if
+     *                          the series does not exist.
+     * @since                   1.2
+     */
+    public static synchronized TreeMap<Double, Double> read(String type, String datacenterName, String customerName,
+                                                            Integer hostId, Integer vmId) {
+        Series s = getSeriesMap().get(getKey(type, datacenterName, customerName, hostId, vmId));
+        TreeMap<Double, Double> samples = new TreeMap<Double, Double>();
+        if (s != null) s.readInto(samples);
+        return samples;
+    }
+
+    /**
+     * Scans a series sequentially, handing its samples to a handler.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter, if any.
+     * @param   customerName    the name of the customer, if any.
+     * @param   hostId          the id of the host, if any.
+     * @param   vmId            the id of the virtual machine, if any.
+     * @param   handler         the handler that receives the samples, with
+     *                          time in seconds.
+     * @since                   1.2
+     */
+    public static synchronized void scan(String type, String datacenterName, String customerName,
+                                         Integer hostId, Integer vmId, ReportDataHandler handler) {
+        Series s = getSeriesMap().get(getKey(type, datacenterName, customerName, hostId, vmId));
+        if (s != null) s.scan(handler);
+    }
+
+    /**
+     * Reads all series of an entity.
+     *
+     * @param   datacenterName  the name of the datacenter, if any.
+     * @param   customerName    the name of the customer, if any.
+     * @param   hostId          the id of the host, if any.
+     * @param   vmId            the id of the virtual machine, if any.
+     * @return                  a map with resource types as keys and maps of
+     *                          samples as values.
+     * @since                   1.2
+     */
+    public static synchronized Map<String, TreeMap<Double, Double>> readAll(String datacenterName, String customerName,
+                                                                            Integer hostId, Integer vmId) {
+        getSeriesMap();
+        Map<String, TreeMap<Double, Double>> allSamples = new HashMap<String, TreeMap<Double, Double>>();
+        Map<String, Series> entitySeries = seriesByEntity.get(getEntityKey(datacenterName, customerName, hostId, vmId));
+        if (entitySeries == null) return allSamples;
+        for (Map.Entry<String, Series> entry : entitySeries.entrySet()) {
+            TreeMap<Double, Double> samples = new TreeMap<Double, Double>();
+            entry.getValue().readInto(samples);
+            allSamples.put(entry.getKey(), samples);
+        }
+        return allSamples;
+    }
+
+    /**
+     * Removes all series of the active database.
+     *
+     * @since   1.2
+     */
+    public static synchronized void clear() {
+        if (HibernateUtil.getActiveDatabase().equals(seriesDatabase)) {
+            closeAll();
+        }
+        series = new HashMap<String, Series>();
+        seriesByEntity = new HashMap<String, Map<String, Series>>();
+        seriesDatabase = HibernateUtil.getActiveDatabase();
+        File directory = getDirectory();
+        if (unmapFailed) return;
+        if (directory.exists() && !FileIO.deleteDirectory(directory)) {
+            Logger.getLogger(ColumnarReportDataStore.class.getName()).log(Level.WARNING,
+                    "Series directory {0} could not be deleted.", directory);
+        }
+    }
+
+    /**
+     * Closes all series that are kept in memory.
+     *
+     * @since   1.2
+     */
+    private static void closeAll() {
+        for (Series s : series.values()) {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                Logger.getLogger(ColumnarReportDataStore.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the series of the active database, discarding the ones of a
+     * previously active database.
+     *
+     * @return  the series of the active database, by key.
+     * @since   1.2
+     */
+    private static Map<String, Series> getSeriesMap() {
+        if (!HibernateUtil.getActiveDatabase().equals(seriesDatabase)) {
+            closeAll();
+            series = new HashMap<String, Series>();
+            seriesByEntity = new HashMap<String, Map<String, Series>>();
+            seriesDatabase = HibernateUtil.getActiveDatabase();
+        }
+        return series;
+    }
+
+    /**
+     * Gets the directory that holds the series files of the active database.
+     *
+     * @return  the directory of the series files.
+     * @since   1.2
+     */
+    private static File getDirectory() {
+        return new File("db", HibernateUtil.getActiveDatabase() + ".series");
+    }
+
+    /**
+     * Gets the key that identifies a series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter, if any.
+     * @param   customerName    the name of the customer, if any.
+     * @param   hostId          the id of the host, if any.
+     * @param   vmId            the id of the virtual machine, if any.
+     * @return                  the key of the series.
+     * @since                   1.2
+     */
+    private static String getKey(String type, String datacenterName, String customerName,
+                                 Integer hostId, Integer vmId) {
+        return type + '\u0000' + getEntityKey(datacenterName, customerName, hostId, vmId);
+    }
+
+    /**
+     * Gets the key that identifies an entity, i.e. a host, a virtual
+     * machine, a datacenter or a customer.
+     *
+     * @param   datacenterName  the name of the datacenter, if any.
+     * @param   customerName    the name of the customer, if any.
+     * @param   hostId          the id of the host, if any.
+     * @param   vmId            the id of the virtual machine, if any.
+     * @return                  the key of the entity.
+     * @since                   1.2
+     */
+    private static String getEntityKey(String datacenterName, String customerName, Integer hostId, Integer vmId) {
+        return datacenterName + '\u0000' + customerName + '\u0000' + hostId + '\u0000' + vmId;
+    }
+
+    /**
+     * Unmaps a mapped buffer, if the running virtual machine allows it.
+     * Java 9 and later unmap buffers through
+     * <code>sun.misc.Unsafe.invokeCleaner</code>; earlier versions through
+     * the cleaner of the buffer. Otherwise, the mapping is released when the
+     * buffer is garbage collected.
+     *
+     * @param   buffer  the buffer to be unmapped.
+     * @return          <code>true</code> if the buffer was unmapped;
+     *                  <code>false</code> otherwise.
+     * @since           1.2
+     */
+    private static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException ex) {
+                //Java 8 and earlier
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return true;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (Exception ex) {
+            if (!unmapFailed) {
+                Logger.getLogger(ColumnarReportDataStore.class.getName()).log(Level.WARNING,
+                        "Series files cannot be unmapped and will not be truncated or removed.", ex);
+            }
+            unmapFailed = true;
+            return false;
+        }
+    }
+
+    /**
+     * A series of samples stored in a memory-mapped file.
+     *
+     * @since   1.2
+     */
+    private static class Series {
+
+        /** The file that stores the series. */
+        private File file;
+
+        /** The mapped segments of the file, in file order. */
+        private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+        /** The number of samples in the series. */
+        private int size;
+
+        /** The number of bytes used in the last segment. */
+        private int position;
+
+        /**
+         * The time of the last sample, as it is reconstructed from the
+         * stored deltas.
+         */
+        private double lastTime;
+
+        /**
+         * Creates an empty series.
+         *
+         * @param   file    the file that stores the series.
+         * @since           1.2
+         */
+        Series(File file) throws IOException {
+            this.file = file;
+            file.getParentFile().mkdirs();
+            mapSegment();
+        }
+
+        /**
+         * Appends a sample to the series, mapping a new segment if the last
+         * one is full.
+         * The stored delta is relative to the reconstructed time of the
+         * previous sample, so rounding errors do not accumulate.
+         *
+         * @param   time    the instant of time of the sample.
+         * @param   amount  the amount of used resources.
+         * @since           1.2
+         */
+        void append(double time, double amount) throws IOException {
+            if (segments.isEmpty()) {
+                throw new IOException("Series " + file + " has been closed.");
+            }
+            if (position + MAX_SAMPLE_SIZE > SEGMENT_SIZE) {
+                if (position < SEGMENT_SIZE) getLastSegment().putInt(position, END_OF_SEGMENT);
+                mapSegment();
+            }
+
+            MappedByteBuffer segment = getLastSegment();
+            double delta = time - lastTime;
+            float narrowDelta = (float) delta;
+            if (narrowDelta == delta) {
+                segment.putInt(position, Float.floatToIntBits(narrowDelta));
+                position += 4;
+            } else {
+                segment.putInt(position, WIDE_DELTA);
+                segment.putDouble(position + 4, delta);
+                position += 12;
+            }
+            segment.putDouble(position, amount);
+            position += 8;
+            lastTime += delta;
+            size++;
+        }
+
+        /**
+         * Reads all samples of the series in a sequential scan.
+         *
+         * @param   samples the map the samples are put into.
+         * @since           1.2
+         */
+        void readInto(final TreeMap<Double, Double> samples) {
+            scan(new ReportDataHandler() {
+                @Override
+                public void handle(double time, double amount) {
+                    samples.put(time, amount);
+                }
+            });
+        }
+
+        /**
+         * Hands all samples of the series to a handler in a sequential scan.
+         *
+         * @param   handler the handler that receives the samples.
+         * @since           1.2
+         */
+        void scan(ReportDataHandler handler) {
+            double time = 0;
+            int segmentIndex = 0;
+            int offset = 0;
+            for (int i = 0; i < size; i++) {
+                MappedByteBuffer segment = segments.get(segmentIndex);
+                if (offset == SEGMENT_SIZE || segment.getInt(offset) == END_OF_SEGMENT) {
+                    segment = segments.get(++segmentIndex);
+                    offset = 0;
+                }
+
+                int marker = segment.getInt(offset);
+                if (marker == WIDE_DELTA) {
+                    time += segment.getDouble(offset + 4);
+                    offset += 12;
+                } else {
+                    time += Float.intBitsToFloat(marker);
+                    offset += 4;
+                }
+                handler.handle(time, segment.getDouble(offset));
+                offset += 8;
+            }
+        }
+
+        /**
+         * Unmaps the segments of the series and truncates its file to the
+         * bytes actually used. The file is not truncated if any segment could
+         * not be unmapped. The series cannot be used afterwards.
+         *
+         * @since   1.2
+         */
+        void close() throws IOException {
+            if (segments.isEmpty()) return;
+
+            long length = (long) (segments.size() - 1) * SEGMENT_SIZE + position;
+            boolean unmapped = true;
+            for (MappedByteBuffer segment : segments) {
+                unmapped &= unmap(segment);
+            }
+            segments.clear();
+            if (!unmapped) return;
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(length);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        /**
+         * Gets the last mapped segment of the file.
+         *
+         * @return  the last segment.
+         * @since   1.2
+         */
+        private MappedByteBuffer getLastSegment() {
+            return segments.get(segments.size() - 1);
+        }
+
+        /**
+         * Maps a new segment after the last segment of the file.
+         *
+         * @since   1.2
+         */
+        private void mapSegment() throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                segments.add(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+                position = 0;
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+    }
+}
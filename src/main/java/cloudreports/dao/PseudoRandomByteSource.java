@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+import cloudreports.utils.RandomStream;
+
+/**
+ * A local stand-in for the QRBG service that produces seeded pseudo-random
+ * bytes.
+ * It allows the quantum randomness option to be exercised without an
+ * account or an Internet connection.
+ *
+ * @see         QRBGByteSource
+ * @since       1.2
+ */
+public class PseudoRandomByteSource implements RandomByteSource {
+
+    /** The stream the bytes are taken from. */
+    private RandomStream stream;
+
+    /**
+     * Creates a source with a given seed.
+     *
+     * @param   seed    the seed of the source.
+     * @since           1.2
+     */
+    public PseudoRandomByteSource(long seed) {
+        this.stream = new RandomStream(seed);
+    }
+
+    @Override
+    public void getBytes(byte[] buffer, int count) {
+        for (int i = 0; i < count; i += 8) {
+            long bits = stream.nextLong();
+            for (int j = i; j < i + 8 && j < count; j++) {
+                buffer[j] = (byte) bits;
+                bits >>>= 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+import java.io.IOException;
+import qrbg.QRBG;
+import qrbg.ServiceDeniedException;
+
+/**
+ * A source of true random bytes backed by the QRBG service.
+ * The effectiveness of this source depends on a proper configuration of
+ * a valid account on the QRBG service and an active Internet connection.
+ * Also, the QRBG service uses the port 1227.
+ *
+ * @see         <a href="http://random.irb.hr/">QRBG Service</a>
+ * @since       1.2
+ */
+public class QRBGByteSource implements RandomByteSource {
+
+    /** The client of the QRBG service. */
+    private QRBG source;
+
+    /**
+     * Creates a source for a QRBG account.
+     *
+     * @param   username    the QRBG username.
+     * @param   password    the QRBG password.
+     * @since               1.2
+     */
+    public QRBGByteSource(String username, String password) {
+        this.source = new QRBG(username, password);
+    }
+
+    @Override
+    public void getBytes(byte[] buffer, int count) throws IOException, ServiceDeniedException {
+        source.getBytes(buffer, count);
+    }
+}
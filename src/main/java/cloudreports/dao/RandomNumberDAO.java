@@ -19,19 +19,21 @@
 
 package cloudreports.dao;
 
-import cloudreports.business.SettingBusiness;
 import cloudreports.database.Database;
 import cloudreports.database.HibernateUtil;
 import cloudreports.enums.RandomNumbersFactory;
 import cloudreports.models.RandomNumber;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
-import qrbg.QRBG;
 import qrbg.ServiceDeniedException;
 
 /**
@@ -46,62 +48,14 @@ import qrbg.ServiceDeniedException;
  */
 public class RandomNumberDAO {
     
-    /** 
-     * The amount of bytes to be obtained by request when using the QRBG service.
-     * Divide by 4 to get the number of integers returned.
-     */
-    private final int NUMBER_OF_BYTES = 1440;
-    
-    /** 
-     * The amount of requests to be executed each time the random numbers pool
-     * needs more entries from the QRBG service.
-     */    
-    private final int NUMBER_OF_REQUESTS = 10;
-    
-    /** 
-     * Inserts more entries in the random numbers pool.
-     * Numbers are obtained from the QRBG service. The total amount of 
-     * integers inserted can be calculated as ({@link #NUMBER_OF_BYTES}/4 * 
-     * {@link #NUMBER_OF_REQUESTS}.
-     *
-     * @throws  IOException                If there is no Internet connectivity.
-     * @throws  ServiceDeniedException     If the QRBG account is not valid.
-     * @see                                <a href="http://random.irb.hr/">QRBG Service</a>
-     * @since                              1.0
-     */        
-    private void insertMoreNumbersInPool() throws IOException, ServiceDeniedException {        
-        QRBG source = new QRBG(SettingBusiness.getQRBGUsername(), SettingBusiness.getQRBGPassword());
-        for(int request = 0; request < NUMBER_OF_REQUESTS; request++) {        
-            byte[] buffer = new byte[NUMBER_OF_BYTES];
-            source.getBytes(buffer, NUMBER_OF_BYTES);        
-
-            Session session = HibernateUtil.getSession();
-            try {
-                session.beginTransaction();
-                for (int i = 0; i < (NUMBER_OF_BYTES - 4); i+=4) {
-                    double randomNumber = QRBG.readInt(buffer, i);
-                    if (randomNumber < 0) {
-                        randomNumber *= -1;
-                    }
-                    randomNumber /= Integer.MAX_VALUE;
-
-                    if(randomNumber != 0) {
-                        session.save(new RandomNumber(randomNumber));
-                    }
-                }
-                session.getTransaction().commit();
-            }
-            catch (HibernateException ex) {
-                session.getTransaction().rollback();
-                Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-            } finally {
-                HibernateUtil.closeSession(session);
-            }
-        }
-    }
+    /** The number of insertions after which the session is flushed. */
+    private static final int FLUSH_INTERVAL = 1000;
     
     /** 
-     * Gets the given amount of random numbers from the random numbers pool.
+     * Gets the given amount of random numbers.
+     * Numbers are taken from the buffer of the {@link RandomNumberPrefetcher},
+     * which consumes the random numbers pool and obtains more numbers from
+     * the QRBG service on demand.
      * The effectiveness of this method depends on a proper configuration of
      * a valid account on the QRBG service and an active Internet connection.
      * Also, the QRBG service uses the port 1227. Make sure your firewall is
@@ -115,23 +69,40 @@ public class RandomNumberDAO {
      * @since                              1.0
      */      
     public List<Double> getRandomNumbers(int amount) throws IOException, ServiceDeniedException {
-        List<RandomNumber> numbersList = getRandomNumbersFromPool(amount);
-        
-        if(numbersList.size() < amount) {
-            insertMoreNumbersInPool();            
-            numbersList = getRandomNumbersFromPool(amount);
-        }
-
         List<Double> returnList = new ArrayList<Double>();
-        Session session = HibernateUtil.getSession();        
+        for(int i = 0; i < amount; i++) {
+            returnList.add(RandomNumberPrefetcher.next());
+        }
+        return returnList;
+    }
+    
+    /** 
+     * Takes random numbers from the random numbers pool.
+     * The numbers are read and removed in bulk, in a single transaction.
+     *
+     * @param   amount      the maximum amount of random numbers to take.
+     * @return              the numbers taken from the pool, at most 
+     *                      <code>amount</code>.
+     * @see                 RandomNumber
+     * @since               1.2
+     */   
+    public double[] takeNumbersFromPool(int amount) {
+        double[] numbers = new double[0];
+        Session session = HibernateUtil.getSession();
         try {
             session.beginTransaction();
-            for(int i = 0; i < amount; i++) {
-                RandomNumber randomNumber = numbersList.get(i);
-                returnList.add(randomNumber.getValue());
-                session.delete(randomNumber);
+            List<Object[]> rows = (List<Object[]>) session.createQuery("select rn.id, rn.value from RandomNumber rn order by rn.id")
+                                                          .setMaxResults(amount).list();
+            if (!rows.isEmpty()) {
+                long lastId = (Long) rows.get(rows.size() - 1)[0];
+                session.createQuery("delete from RandomNumber where id <= :lastId").setLong("lastId", lastId).executeUpdate();
             }
             session.getTransaction().commit();
+
+            numbers = new double[rows.size()];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = (Double) rows.get(i)[1];
+            }
         }
         catch (HibernateException ex) {
             session.getTransaction().rollback();
@@ -140,33 +111,88 @@ public class RandomNumberDAO {
             HibernateUtil.closeSession(session);
         }
         
-        return returnList;
+        return numbers;
     }
     
     /** 
-     * Gets a list of {@link RandomNumber} registries from the random numbers
-     * pool.
+     * Inserts random numbers in the random numbers pool, in a single
+     * transaction.
      *
-     * @param   amount      the amount of random numbers to get from the pool.
-     * @return              a list of random numbers from the pool. 
-     *                      The resulting list has, at most, the number of
-     *                      elements given by <code>amount</code>.
+     * @param   numbers     the numbers to be inserted.
      * @see                 RandomNumber
-     * @since               1.0
+     * @since               1.2
      */   
-    private List<RandomNumber> getRandomNumbersFromPool(int amount) {
+    public void insertNumbersInPool(double[] numbers) {
         Session session = HibernateUtil.getSession();
-        List<RandomNumber> numbersList = new ArrayList<RandomNumber>();
         try {
-            numbersList = (List<RandomNumber>) session.createCriteria(RandomNumber.class).setMaxResults(amount).list();
-        } catch (HibernateException ex) {
+            session.beginTransaction();
+            for (int i = 0; i < numbers.length; i++) {
+                session.save(new RandomNumber(numbers[i]));
+                if ((i + 1) % FLUSH_INTERVAL == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.getTransaction().commit();
+        }
+        catch (HibernateException ex) {
+            session.getTransaction().rollback();
             Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
             HibernateUtil.closeSession(session);
         }
-        
-        return numbersList;
     }
+    
+    /** 
+     * Inserts random numbers in the random numbers pool of a given
+     * database, in a single transaction.
+     * Databases other than the active one are written through a JDBC
+     * connection of their own, since their session factory is closed.
+     *
+     * @param   database    the name of the database, without the .cre
+     *                      extension.
+     * @param   numbers     the numbers to be inserted.
+     * @see                 RandomNumber
+     * @since               1.2
+     */   
+    public void insertNumbersInPool(String database, double[] numbers) {
+        if (database.equals(HibernateUtil.getActiveDatabase())) {
+            insertNumbersInPool(numbers);
+            return;
+        }
 
+        Connection connection = null;
+        try {
+            Class.forName("org.sqlite.JDBC");
+            connection = DriverManager.getConnection("jdbc:sqlite:db/" + database + ".cre");
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement("INSERT INTO RandomPool (Value) VALUES (?)");
+            try {
+                for (double number : numbers) {
+                    statement.setDouble(1, number);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (ClassNotFoundException ex) {
+            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+    }
     
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+import cloudreports.business.SettingBusiness;
+import cloudreports.database.HibernateUtil;
+import java.io.IOException;
+import qrbg.QRBG;
+import qrbg.ServiceDeniedException;
+
+/**
+ * Keeps an in-memory buffer of random numbers for the QRBG randomness
+ * source, so that consumers do not wait for the database or the network
+ * for every number.
+ * Numbers are taken from the on-disk random numbers pool first, in bulk.
+ * Once the pool is exhausted, a background thread keeps the buffer topped up
+ * with numbers obtained from a {@link RandomByteSource}, the QRBG service
+ * by default.
+ * <p>
+ * Numbers left in the buffer are written back to the on-disk pool they were
+ * taken for by {@link #release()}, or when another database becomes active.
+ *
+ * @see         RandomNumberDAO
+ * @since       1.2
+ */
+public class RandomNumberPrefetcher {
+
+    /** The capacity of the buffer, in numbers. */
+    private static final int CAPACITY = 8192;
+
+    /** The number of buffered numbers under which the buffer is topped up. */
+    private static final int LOW_WATERMARK = 2048;
+
+    /** 
+     * The amount of bytes to be obtained by request from the byte source.
+     * Divide by 4 to get the number of integers returned.
+     */
+    private static final int NUMBER_OF_BYTES = 1440;
+
+    /** The amount of requests to be executed each time the buffer is topped up. */
+    private static final int NUMBER_OF_REQUESTS = 10;
+
+    /** The buffered numbers, as a ring. */
+    private static final double[] numbers = new double[CAPACITY];
+
+    /** The position of the next number in the ring. */
+    private static int head;
+
+    /** The number of buffered numbers. */
+    private static int count;
+
+    /** The database whose on-disk pool is being consumed. */
+    private static String poolDatabase;
+
+    /** Indicates whether the on-disk pool of the active database is exhausted. */
+    private static boolean diskPoolEmpty;
+
+    /** The byte source set by {@link #setByteSource(RandomByteSource)}, if any. */
+    private static RandomByteSource customByteSource;
+
+    /** The byte source used by the background thread. */
+    private static RandomByteSource byteSource;
+
+    /** The failure of the last attempt to top up the buffer, if any. */
+    private static Exception failure;
+
+    /** The lock that guards the buffer. */
+    private static final Object lock = new Object();
+
+    /** The background thread that tops up the buffer. */
+    private static Thread prefetcherThread;
+
+    /** The DAO of the on-disk pool. */
+    private static RandomNumberDAO randomNumberDAO = new RandomNumberDAO();
+
+    /**
+     * Sets the source of random bytes used once the on-disk pool is
+     * exhausted, e.g. a {@link PseudoRandomByteSource} to run without the
+     * QRBG service.
+     *
+     * @param   source  the byte source, or <code>null</code> to use the QRBG
+     *                  service with the configured account.
+     * @since           1.2
+     */
+    public static void setByteSource(RandomByteSource source) {
+        synchronized (lock) {
+            customByteSource = source;
+            byteSource = null;
+        }
+    }
+
+    /**
+     * Gets the next random number, waiting for the buffer to be topped up
+     * if it is empty.
+     *
+     * @return                          a random number.
+     * @throws  IOException             if the byte source cannot be reached.
+     * @throws  ServiceDeniedException  if the byte source refuses the request.
+     * @since                           1.2
+     */
+    public static double next() throws IOException, ServiceDeniedException {
+        synchronized (lock) {
+            String activeDatabase = HibernateUtil.getActiveDatabase();
+            if (!activeDatabase.equals(poolDatabase)) {
+                releaseTo(poolDatabase);
+                poolDatabase = activeDatabase;
+                diskPoolEmpty = false;
+                byteSource = null;
+            }
+
+            while (count == 0) {
+                if (!diskPoolEmpty) {
+                    loadFromDisk();
+                } else if (failure != null) {
+                    Exception ex = failure;
+                    failure = null;
+                    if (ex instanceof ServiceDeniedException) throw (ServiceDeniedException) ex;
+                    throw (IOException) ex;
+                } else {
+                    if (byteSource == null) {
+                        byteSource = customByteSource != null
+                                   ? customByteSource
+                                   : new QRBGByteSource(SettingBusiness.getQRBGUsername(), SettingBusiness.getQRBGPassword());
+                    }
+                    ensureStarted();
+                    lock.notifyAll();
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for random numbers.");
+                    }
+                }
+            }
+
+            double number = numbers[head];
+            head = (head + 1) % CAPACITY;
+            count--;
+            if (count < LOW_WATERMARK && diskPoolEmpty) lock.notifyAll();
+            return number;
+        }
+    }
+
+    /**
+     * Writes the buffered numbers back to the on-disk pool of the database
+     * they were taken for, so they are not lost when the application exits.
+     *
+     * @since   1.2
+     */
+    public static void release() {
+        synchronized (lock) {
+            releaseTo(poolDatabase);
+        }
+    }
+
+    /**
+     * Replaces the DAO of the on-disk pool and empties the buffer without
+     * writing it back. It is used by tests to run without a database.
+     *
+     * @param   dao     the DAO of the on-disk pool.
+     * @since           1.2
+     */
+    static void setRandomNumberDAO(RandomNumberDAO dao) {
+        synchronized (lock) {
+            randomNumberDAO = dao;
+            head = 0;
+            count = 0;
+            poolDatabase = null;
+            diskPoolEmpty = false;
+            byteSource = null;
+            failure = null;
+        }
+    }
+
+    /**
+     * Writes the buffered numbers back to the on-disk pool of a database.
+     * Must be called holding the lock.
+     *
+     * @param   database    the database the numbers were taken for, or
+     *                      <code>null</code> if none.
+     * @since               1.2
+     */
+    private static void releaseTo(String database) {
+        if (database != null && count > 0) {
+            double[] unused = new double[count];
+            for (int i = 0; i < count; i++) {
+                unused[i] = numbers[(head + i) % CAPACITY];
+            }
+            randomNumberDAO.insertNumbersInPool(database, unused);
+        }
+        head = 0;
+        count = 0;
+        diskPoolEmpty = false;
+    }
+
+    /**
+     * Fills the buffer with numbers from the on-disk pool in a single bulk
+     * read. Must be called holding the lock.
+     *
+     * @since   1.2
+     */
+    private static void loadFromDisk() {
+        int room = CAPACITY - count;
+        double[] loaded = randomNumberDAO.takeNumbersFromPool(room);
+        append(loaded, loaded.length);
+        if (loaded.length < room) diskPoolEmpty = true;
+    }
+
+    /**
+     * Appends numbers to the buffer. Must be called holding the lock.
+     *
+     * @param   values  the numbers to be appended.
+     * @param   length  the amount of numbers to be appended.
+     * @since           1.2
+     */
+    private static void append(double[] values, int length) {
+        int appended = Math.min(length, CAPACITY - count);
+        for (int i = 0; i < appended; i++) {
+            numbers[(head + count) % CAPACITY] = values[i];
+            count++;
+        }
+    }
+
+    /**
+     * Starts the background thread, if it has not been started yet.
+     * Must be called holding the lock.
+     *
+     * @since   1.2
+     */
+    private static void ensureStarted() {
+        if (prefetcherThread != null) return;
+        prefetcherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, "RandomNumberPrefetcher");
+        prefetcherThread.setDaemon(true);
+        prefetcherThread.start();
+    }
+
+    /**
+     * Tops up the buffer from the byte source whenever it runs low after the
+     * on-disk pool is exhausted.
+     *
+     * @since   1.2
+     */
+    private static void prefetch() {
+        while (true) {
+            RandomByteSource source;
+            synchronized (lock) {
+                while (!diskPoolEmpty || count >= LOW_WATERMARK || failure != null || byteSource == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                source = byteSource;
+            }
+
+            try {
+                double[] fetched = new double[NUMBER_OF_REQUESTS * NUMBER_OF_BYTES / 4];
+                int length = fetch(source, fetched);
+                synchronized (lock) {
+                    append(fetched, length);
+                    lock.notifyAll();
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            } catch (ServiceDeniedException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    /**
+     * Records a failure to top up the buffer, so that it is reported to the
+     * waiting consumer.
+     *
+     * @param   ex  the failure.
+     * @since       1.2
+     */
+    private static void fail(Exception ex) {
+        synchronized (lock) {
+            failure = ex;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Obtains random numbers from a byte source.
+     * Every 4 bytes make an integer, which is scaled to a number between 0
+     * and 1; zeros are discarded.
+     *
+     * @param   source  the byte source.
+     * @param   fetched the array the numbers are written to.
+     * @return          the amount of numbers obtained.
+     * @since           1.2
+     */
+    private static int fetch(RandomByteSource source, double[] fetched) throws IOException, ServiceDeniedException {
+        byte[] buffer = new byte[NUMBER_OF_BYTES];
+        int length = 0;
+        for (int request = 0; request < NUMBER_OF_REQUESTS; request++) {
+            source.getBytes(buffer, NUMBER_OF_BYTES);
+            for (int i = 0; i < (NUMBER_OF_BYTES - 4); i += 4) {
+                double randomNumber = QRBG.readInt(buffer, i);
+                if (randomNumber < 0) {
+                    randomNumber *= -1;
+                }
+                randomNumber /= Integer.MAX_VALUE;
+
+                if (randomNumber != 0) {
+                    fetched[length++] = randomNumber;
+                }
+            }
+        }
+        return length;
+    }
+}
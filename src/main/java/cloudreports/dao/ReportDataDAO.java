@@ -22,17 +22,27 @@ package cloudreports.dao;
 import cloudreports.database.Database;
 import cloudreports.database.HibernateUtil;
 import cloudreports.models.ReportData;
+import cloudreports.utils.TimeSeries;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 
 /**
  * ReportDataDAO provides basic CRUD operations related to the 
  * {@link ReportData} class.
+ * Report data is inserted asynchronously by the {@link ReportDataWriter}, or
+ * kept by the {@link ColumnarReportDataStore} when it is enabled.
  * 
  * @see         ReportData
  * @author      Thiago T. Sá
@@ -40,6 +50,9 @@ import org.hibernate.criterion.Restrictions;
  */
 public class ReportDataDAO {
     
+    /** The number of rows fetched at a time when streaming report data. */
+    private static final int FETCH_SIZE = 1024;
+    
     /** 
      * Inserts report data related to resource usage of a given host.
      *
@@ -56,20 +69,14 @@ public class ReportDataDAO {
     public void insertHostData(String type,String datacenterName, int hostId,
                                double time, double amount, int simulationId) {
         
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.append(type, datacenterName, null, hostId, null, time, amount);
+            return;
+        }
+        
         ReportData rd = new ReportData(type, datacenterName, null, hostId, null, time, amount, simulationId);
         
-        Session session = HibernateUtil.getSession();        
-        try {
-            session.beginTransaction();
-            session.save(rd);
-            session.getTransaction().commit();
-        }
-        catch (HibernateException ex) {
-            session.getTransaction().rollback();
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }        
+        ReportDataWriter.write(rd);
     }
     
     /** 
@@ -84,34 +91,30 @@ public class ReportDataDAO {
      * @since                   1.0
      */    
     public TreeMap<Double, Double> getHostUsedResources(String type, String datacenterName, int hostId) {
-        List<ReportData> dataList = null;
-        Session session = HibernateUtil.getSession();
-        try {
-            dataList = (List<ReportData>) session.createCriteria(ReportData.class)
-                                                 .add(Restrictions.conjunction()
-                                                    .add(Restrictions.eq("type", type))
-                                                    .add(Restrictions.eq("datacenterName", datacenterName))
-                                                    .add(Restrictions.eq("hostId", hostId)))
-                                                 .list();
-        }
-        catch (HibernateException ex) {
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }
-        
         TreeMap<Double, Double> hostUsedResources = new TreeMap<Double, Double>();
-        if(dataList == null) return hostUsedResources;
-        for(ReportData rd : dataList) {
-            if(type.equals("BANDWIDTH")) {
-                //If bandwidth, convert from kbps to Mbps
-                hostUsedResources.put(rd.getTime()/60, rd.getAmount() / 1000);
-            }
-            else hostUsedResources.put(rd.getTime()/60, rd.getAmount());
+        streamHostUsedResources(type, datacenterName, hostId, new TreeMapHandler(hostUsedResources));
+        return hostUsedResources;
+    }
+    
+    /** 
+     * Streams a report of resources usage of a given host, one sample at a
+     * time, without loading the whole series into memory.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter that owns the host.
+     * @param   hostId          the id of the host.
+     * @param   handler         the handler that receives the samples.
+     * @see                     ReportDataHandler
+     * @since                   1.2
+     */    
+    public void streamHostUsedResources(String type, String datacenterName, int hostId, ReportDataHandler handler) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.scan(type, datacenterName, null, hostId, null, new ReportUnitsHandler(type, handler));
+            return;
         }
         
-        return hostUsedResources;
-    }  
+        stream("rd.datacenterName = :entityName and rd.hostId = :entityId", type, datacenterName, hostId, handler);
+    }
     
     /**
      * Inserts report data related to resource usage of a given virtual machine.
@@ -130,20 +133,14 @@ public class ReportDataDAO {
     public void insertVmData(String type,String customerName, int vmId, 
                              double time, double amount, int simulationId) {
         
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.append(type, null, customerName, null, vmId, time, amount);
+            return;
+        }
+        
         ReportData rd = new ReportData(type, null, customerName, null, vmId, time, amount, simulationId);
         
-        Session session = HibernateUtil.getSession();
-        try {
-            session.beginTransaction();
-            session.save(rd);
-            session.getTransaction().commit();
-        }
-        catch (HibernateException ex) {
-            session.getTransaction().rollback();
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }
+        ReportDataWriter.write(rd);
     }
     
     /** 
@@ -158,35 +155,30 @@ public class ReportDataDAO {
      * @since                   1.0
      */        
     public TreeMap<Double, Double> getVmUsedResources(String type, String customerName, int vmId) {
-        List<ReportData> dataList = null;
-        Session session = HibernateUtil.getSession();
-        try {
-            dataList = (List<ReportData>) session.createCriteria(ReportData.class)
-                                                 .add(Restrictions.conjunction()
-                                                    .add(Restrictions.eq("type", type))
-                                                    .add(Restrictions.eq("customerName", customerName))
-                                                    .add(Restrictions.eq("vmId", vmId)))
-                                                 .list();
-        }
-        catch (HibernateException ex) {
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }
-        
         TreeMap<Double, Double> vmUsedResources = new TreeMap<Double, Double>();
-        if(dataList == null) return vmUsedResources;
-        for(ReportData rd : dataList) {
-            if (type.equals("BANDWIDTH")) {
-                //If bandwidth, convert from kbps to Mbps
-                vmUsedResources.put(rd.getTime()/60, rd.getAmount() / 1000);
-            } else {
-                vmUsedResources.put(rd.getTime()/60, rd.getAmount());
-            }
+        streamVmUsedResources(type, customerName, vmId, new TreeMapHandler(vmUsedResources));
+        return vmUsedResources;
+    }
+    
+    /** 
+     * Streams a report of resources usage of a given virtual machine, one
+     * sample at a time, without loading the whole series into memory.
+     *
+     * @param   type            the type of the used resource.
+     * @param   customerName    the name of the customer that owns the virtual machine.
+     * @param   vmId            the id of the virtual machine.
+     * @param   handler         the handler that receives the samples.
+     * @see                     ReportDataHandler
+     * @since                   1.2
+     */    
+    public void streamVmUsedResources(String type, String customerName, int vmId, ReportDataHandler handler) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.scan(type, null, customerName, null, vmId, new ReportUnitsHandler(type, handler));
+            return;
         }
         
-        return vmUsedResources;
-    }    
+        stream("rd.customerName = :entityName and rd.vmId = :entityId", type, customerName, vmId, handler);
+    }
     
     /** 
      * Inserts report data related to overall resource usage of a given datacenter.
@@ -204,20 +196,14 @@ public class ReportDataDAO {
     public void insertDatacenterOverallData(String type, String datacenterName, double time,
                                             double amount, int simulationId) {
         
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.append(type, datacenterName, null, null, null, time, amount);
+            return;
+        }
+        
         ReportData rd = new ReportData(type, datacenterName, null, time, amount, simulationId);
         
-        Session session = HibernateUtil.getSession();
-        try {
-            session.beginTransaction();
-            session.save(rd);
-            session.getTransaction().commit();
-        }
-        catch (HibernateException ex) {
-            session.getTransaction().rollback();
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }
+        ReportDataWriter.write(rd);
     } 
     
     /** 
@@ -231,35 +217,29 @@ public class ReportDataDAO {
      * @since                   1.0
      */      
     public TreeMap<Double, Double> getDatacenterOverallData(String type, String datacenterName) {
-        List<ReportData> dataList = null;
-        Session session = HibernateUtil.getSession();
-        try {
-            dataList = (List<ReportData>) session.createCriteria(ReportData.class)
-                                                 .add(Restrictions.conjunction()
-                                                    .add(Restrictions.eq("type", type))
-                                                    .add(Restrictions.eq("datacenterName", datacenterName))
-                                                    .add(Restrictions.isNull("hostId")))
-                                                 .list();
-        }
-        catch (HibernateException ex) {
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }
-        
         TreeMap<Double, Double> overallUsedResources = new TreeMap<Double, Double>();
-        if(dataList == null) return overallUsedResources;
-        for(ReportData rd : dataList) {
-            if (type.equals("BANDWIDTH")) {
-                //If bandwidth, convert from kbps to Mbps
-                overallUsedResources.put(rd.getTime()/60, rd.getAmount() / 1000);
-            } else {
-                overallUsedResources.put(rd.getTime()/60, rd.getAmount());
-            }
+        streamDatacenterOverallData(type, datacenterName, new TreeMapHandler(overallUsedResources));
+        return overallUsedResources;
+    }
+    
+    /** 
+     * Streams a report of overall resources usage of a given datacenter, one
+     * sample at a time, without loading the whole series into memory.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter.
+     * @param   handler         the handler that receives the samples.
+     * @see                     ReportDataHandler
+     * @since                   1.2
+     */    
+    public void streamDatacenterOverallData(String type, String datacenterName, ReportDataHandler handler) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.scan(type, datacenterName, null, null, null, new ReportUnitsHandler(type, handler));
+            return;
         }
         
-        return overallUsedResources;
-    }    
+        stream("rd.datacenterName = :entityName and rd.hostId is null", type, datacenterName, null, handler);
+    }
     
     /** 
      * Inserts report data related to overall resource usage of a given customer.
@@ -277,20 +257,14 @@ public class ReportDataDAO {
     public void insertCustomerOverallData(String type, String customerName, double time,
                                           double amount, int simulationId) {
         
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.append(type, null, customerName, null, null, time, amount);
+            return;
+        }
+        
         ReportData rd = new ReportData(type, null, customerName, time, amount, simulationId);
         
-        Session session = HibernateUtil.getSession();
-        try {
-            session.beginTransaction();
-            session.save(rd);
-            session.getTransaction().commit();
-        }
-        catch (HibernateException ex) {
-            session.getTransaction().rollback();
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
-        }
+        ReportDataWriter.write(rd);
     }        
     
     /**
@@ -304,14 +278,238 @@ public class ReportDataDAO {
      * @since               1.0
      */    
     public TreeMap<Double, Double> getCustomerOverallData(String type, String customerName) {
+        TreeMap<Double, Double> overallUsedResources = new TreeMap<Double, Double>();
+        streamCustomerOverallData(type, customerName, new TreeMapHandler(overallUsedResources));
+        return overallUsedResources;
+    }
+    
+    /** 
+     * Streams a report of overall resources usage of a given customer, one
+     * sample at a time, without loading the whole series into memory.
+     *
+     * @param   type            the type of the used resource.
+     * @param   customerName    the name of the customer.
+     * @param   handler         the handler that receives the samples.
+     * @see                     ReportDataHandler
+     * @since                   1.2
+     */    
+    public void streamCustomerOverallData(String type, String customerName, ReportDataHandler handler) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            ColumnarReportDataStore.scan(type, null, customerName, null, null, new ReportUnitsHandler(type, handler));
+            return;
+        }
+        
+        stream("rd.customerName = :entityName and rd.vmId is null", type, customerName, null, handler);
+    }
+
+    /** 
+     * Gets a report of resources usage of a given host as a compact time series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter that owns the host.
+     * @param   hostId          the id of the host.
+     * @return                  the series of used resources, with time in
+     *                          minutes.
+     * @see                     TimeSeries
+     * @since                   1.2
+     */    
+    public TimeSeries getHostUsedResourcesSeries(String type, String datacenterName, int hostId) {
+        TimeSeries series = new TimeSeries();
+        streamHostUsedResources(type, datacenterName, hostId, new TimeSeriesHandler(series));
+        return series;
+    }
+    
+    /** 
+     * Gets a report of resources usage of a given virtual machine as a compact time series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   customerName    the name of the customer that owns the virtual machine.
+     * @param   vmId            the id of the virtual machine.
+     * @return                  the series of used resources, with time in
+     *                          minutes.
+     * @see                     TimeSeries
+     * @since                   1.2
+     */    
+    public TimeSeries getVmUsedResourcesSeries(String type, String customerName, int vmId) {
+        TimeSeries series = new TimeSeries();
+        streamVmUsedResources(type, customerName, vmId, new TimeSeriesHandler(series));
+        return series;
+    }
+    
+    /** 
+     * Gets a report of overall resources usage of a given datacenter as a compact time series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   datacenterName  the name of the datacenter.
+     * @return                  the series of used resources, with time in
+     *                          minutes.
+     * @see                     TimeSeries
+     * @since                   1.2
+     */    
+    public TimeSeries getDatacenterOverallDataSeries(String type, String datacenterName) {
+        TimeSeries series = new TimeSeries();
+        streamDatacenterOverallData(type, datacenterName, new TimeSeriesHandler(series));
+        return series;
+    }
+    
+    /** 
+     * Gets a report of overall resources usage of a given customer as a compact time series.
+     *
+     * @param   type            the type of the used resource.
+     * @param   customerName    the name of the customer.
+     * @return                  the series of used resources, with time in
+     *                          minutes.
+     * @see                     TimeSeries
+     * @since                   1.2
+     */    
+    public TimeSeries getCustomerOverallDataSeries(String type, String customerName) {
+        TimeSeries series = new TimeSeries();
+        streamCustomerOverallData(type, customerName, new TimeSeriesHandler(series));
+        return series;
+    }
+    
+    /** 
+     * Streams the samples of the series that match a condition, in
+     * ascending order of time, through a forward-only cursor.
+     *
+     * @param   condition   the HQL condition that selects the entity, using
+     *                      the <code>entityName</code> and, optionally, the
+     *                      <code>entityId</code> parameters.
+     * @param   type        the type of the used resource.
+     * @param   entityName  the name of the datacenter or customer.
+     * @param   entityId    the id of the host or virtual machine, if any.
+     * @param   handler     the handler that receives the samples.
+     * @since               1.2
+     */    
+    private void stream(String condition, String type, String entityName, Integer entityId,
+                        ReportDataHandler handler) {
+        ReportDataWriter.flush();
+        ReportDataHandler unitsHandler = new ReportUnitsHandler(type, handler);
+        ScrollableResults results = null;
+        Session session = HibernateUtil.getSession();
+        try {
+            Query query = session.createQuery("select rd.time, rd.amount from ReportData rd "
+                                              + "where rd.type = :type and " + condition
+                                              + " order by rd.time, rd.id")
+                                 .setString("type", type)
+                                 .setString("entityName", entityName)
+                                 .setFetchSize(FETCH_SIZE);
+            if (entityId != null) query.setInteger("entityId", entityId);
+            
+            results = query.scroll(ScrollMode.FORWARD_ONLY);
+            while (results.next()) {
+                unitsHandler.handle(results.getDouble(0), results.getDouble(1));
+            }
+        }
+        catch (HibernateException ex) {
+            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (results != null) results.close();
+            HibernateUtil.closeSession(session);
+        }
+    }
+    
+    /** 
+     * Gets the reports of all types of resources used by a given host in a
+     * single query.
+     *
+     * @param   datacenterName  the name of the datacenter that owns the host.
+     * @param   hostId          the id of the host.
+     * @return                  a map with types of resources as keys and maps
+     *                          of used resources by time as values.
+     * @see                     #getHostUsedResources(String, String, int)
+     * @since                   1.2
+     */    
+    public Map<String, TreeMap<Double, Double>> getAllHostUsedResources(String datacenterName, int hostId) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            return toReportUnits(ColumnarReportDataStore.readAll(datacenterName, null, hostId, null));
+        }
+        
+        return getAllUsedResources(Restrictions.conjunction()
+                                      .add(Restrictions.eq("datacenterName", datacenterName))
+                                      .add(Restrictions.eq("hostId", hostId)));
+    }
+    
+    /** 
+     * Gets the reports of all types of resources used by a given virtual
+     * machine in a single query.
+     *
+     * @param   customerName    the name of the customer that owns the virtual machine.
+     * @param   vmId            the id of the virtual machine.
+     * @return                  a map with types of resources as keys and maps
+     *                          of used resources by time as values.
+     * @see                     #getVmUsedResources(String, String, int)
+     * @since                   1.2
+     */    
+    public Map<String, TreeMap<Double, Double>> getAllVmUsedResources(String customerName, int vmId) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            return toReportUnits(ColumnarReportDataStore.readAll(null, customerName, null, vmId));
+        }
+        
+        return getAllUsedResources(Restrictions.conjunction()
+                                      .add(Restrictions.eq("customerName", customerName))
+                                      .add(Restrictions.eq("vmId", vmId)));
+    }
+    
+    /** 
+     * Gets the reports of all types of resources used by a given datacenter
+     * in a single query.
+     *
+     * @param   datacenterName  the name of the datacenter.
+     * @return                  a map with types of resources as keys and maps
+     *                          of used resources by time as values.
+     * @see                     #getDatacenterOverallData(String, String)
+     * @since                   1.2
+     */    
+    public Map<String, TreeMap<Double, Double>> getAllDatacenterOverallData(String datacenterName) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            return toReportUnits(ColumnarReportDataStore.readAll(datacenterName, null, null, null));
+        }
+        
+        return getAllUsedResources(Restrictions.conjunction()
+                                      .add(Restrictions.eq("datacenterName", datacenterName))
+                                      .add(Restrictions.isNull("hostId")));
+    }
+    
+    /** 
+     * Gets the reports of all types of resources used by a given customer
+     * in a single query.
+     *
+     * @param   customerName    the name of the customer.
+     * @return                  a map with types of resources as keys and maps
+     *                          of used resources by time as values.
+     * @see                     #getCustomerOverallData(String, String)
+     * @since                   1.2
+     */    
+    public Map<String, TreeMap<Double, Double>> getAllCustomerOverallData(String customerName) {
+        if (ColumnarReportDataStore.isEnabled()) {
+            return toReportUnits(ColumnarReportDataStore.readAll(null, customerName, null, null));
+        }
+        
+        return getAllUsedResources(Restrictions.conjunction()
+                                      .add(Restrictions.eq("customerName", customerName))
+                                      .add(Restrictions.isNull("vmId")));
+    }
+    
+    /** 
+     * Gets the reports of all types of resources of the entity that matches
+     * a criterion, grouping the rows by type in a single pass.
+     * Rows are read in the order of the ReportData indexes.
+     *
+     * @param   criterion   the criterion that selects the entity.
+     * @return              a map with types of resources as keys and maps
+     *                      of used resources by time as values.
+     * @since               1.2
+     */    
+    private Map<String, TreeMap<Double, Double>> getAllUsedResources(Criterion criterion) {
+        ReportDataWriter.flush();
         List<ReportData> dataList = null;
         Session session = HibernateUtil.getSession();
         try {
             dataList = (List<ReportData>) session.createCriteria(ReportData.class)
-                                                 .add(Restrictions.conjunction()
-                                                    .add(Restrictions.eq("type", type))
-                                                    .add(Restrictions.eq("customerName", customerName))
-                                                    .add(Restrictions.isNull("vmId")))
+                                                 .add(criterion)
+                                                 .addOrder(Order.asc("type"))
+                                                 .addOrder(Order.asc("time"))
                                                  .list();
         }
         catch (HibernateException ex) {
@@ -320,18 +518,65 @@ public class ReportDataDAO {
             HibernateUtil.closeSession(session);
         }
         
-        TreeMap<Double, Double> overallUsedResources = new TreeMap<Double, Double>();
-        if(dataList == null) return overallUsedResources;
+        Map<String, TreeMap<Double, Double>> allUsedResources = new HashMap<String, TreeMap<Double, Double>>();
+        if(dataList == null) return allUsedResources;
+        String currentType = null;
+        TreeMap<Double, Double> usedResources = null;
         for(ReportData rd : dataList) {
-            if (type.equals("BANDWIDTH")) {
+            if (!rd.getType().equals(currentType)) {
+                currentType = rd.getType();
+                usedResources = new TreeMap<Double, Double>();
+                allUsedResources.put(currentType, usedResources);
+            }
+            if (currentType.equals("BANDWIDTH")) {
                 //If bandwidth, convert from kbps to Mbps
-                overallUsedResources.put(rd.getTime()/60, rd.getAmount() / 1000);
+                usedResources.put(rd.getTime()/60, rd.getAmount() / 1000);
             } else {
-                overallUsedResources.put(rd.getTime()/60, rd.getAmount());
+                usedResources.put(rd.getTime()/60, rd.getAmount());
             }
         }
         
-        return overallUsedResources;
+        return allUsedResources;
+    }
+
+    /**
+     * Converts all series of an entity read from the columnar storage to the
+     * units used by reports.
+     *
+     * @param   allSeries   the series, by type of resource.
+     * @return              the converted series, by type of resource.
+     * @see                 #toReportUnits(String, TreeMap)
+     * @since               1.2
+     */
+    private Map<String, TreeMap<Double, Double>> toReportUnits(Map<String, TreeMap<Double, Double>> allSeries) {
+        Map<String, TreeMap<Double, Double>> allUsedResources = new HashMap<String, TreeMap<Double, Double>>();
+        for (Map.Entry<String, TreeMap<Double, Double>> series : allSeries.entrySet()) {
+            allUsedResources.put(series.getKey(), toReportUnits(series.getKey(), series.getValue()));
+        }
+        return allUsedResources;
+    }
+
+    /**
+     * Converts a series read from the columnar storage to the units used by
+     * reports: time in minutes and bandwidth in Mbps.
+     *
+     * @param   type    the type of the used resource.
+     * @param   series  the series, with time in seconds as keys.
+     * @return          the converted series.
+     * @see             ColumnarReportDataStore
+     * @since           1.2
+     */
+    private TreeMap<Double, Double> toReportUnits(String type, TreeMap<Double, Double> series) {
+        TreeMap<Double, Double> usedResources = new TreeMap<Double, Double>();
+        for (Map.Entry<Double, Double> sample : series.entrySet()) {
+            if (type.equals("BANDWIDTH")) {
+                //If bandwidth, convert from kbps to Mbps
+                usedResources.put(sample.getKey()/60, sample.getValue() / 1000);
+            } else {
+                usedResources.put(sample.getKey()/60, sample.getValue());
+            }
+        }
+        return usedResources;
     }
 
     /**
@@ -342,21 +587,99 @@ public class ReportDataDAO {
      * @since               1.0
      */      
     public void insertDataList(List<ReportData> dataList) {
-        Session session = HibernateUtil.getSession();
-        try {
-            session.beginTransaction();
+        if (ColumnarReportDataStore.isEnabled()) {
+            for (ReportData data : dataList) {
+                ColumnarReportDataStore.append(data.getType(), data.getDatacenterName(), data.getCustomerName(),
+                                               data.getHostId(), data.getVmId(), data.getTime(), data.getAmount());
+            }
+            return;
+        }
+        
+        ReportDataWriter.writeAll(dataList);
+    }
+
+    /**
+     * Converts samples to the units used by reports, time in minutes and
+     * bandwidth in Mbps, before handing them to another handler.
+     *
+     * @since   1.2
+     */
+    private static class ReportUnitsHandler implements ReportDataHandler {
 
-            for(ReportData data : dataList) {
-                session.save(data);            
-            }       
+        /** The handler that receives the converted samples. */
+        private ReportDataHandler handler;
 
-            session.getTransaction().commit();
+        /** Indicates whether the samples refer to bandwidth. */
+        private boolean isBandwidth;
+
+        /**
+         * Creates a new converting handler.
+         *
+         * @param   type    the type of the used resource.
+         * @param   handler the handler that receives the converted samples.
+         * @since           1.2
+         */
+        ReportUnitsHandler(String type, ReportDataHandler handler) {
+            this.handler = handler;
+            this.isBandwidth = type.equals("BANDWIDTH");
         }
-        catch (HibernateException ex) {
-            session.getTransaction().rollback();
-            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            HibernateUtil.closeSession(session);
+
+        @Override
+        public void handle(double time, double amount) {
+            //If bandwidth, convert from kbps to Mbps
+            handler.handle(time/60, isBandwidth ? amount / 1000 : amount);
+        }
+    }
+
+    /**
+     * Collects samples into a map, with values of time as keys.
+     *
+     * @since   1.2
+     */
+    private static class TreeMapHandler implements ReportDataHandler {
+
+        /** The map samples are put into. */
+        private TreeMap<Double, Double> samples;
+
+        /**
+         * Creates a new collecting handler.
+         *
+         * @param   samples the map samples are put into.
+         * @since           1.2
+         */
+        TreeMapHandler(TreeMap<Double, Double> samples) {
+            this.samples = samples;
+        }
+
+        @Override
+        public void handle(double time, double amount) {
+            samples.put(time, amount);
+        }
+    }
+
+    /**
+     * Collects samples into a compact time series.
+     *
+     * @since   1.2
+     */
+    private static class TimeSeriesHandler implements ReportDataHandler {
+
+        /** The series samples are added to. */
+        private TimeSeries series;
+
+        /**
+         * Creates a new collecting handler.
+         *
+         * @param   series  the series samples are added to.
+         * @since           1.2
+         */
+        TimeSeriesHandler(TimeSeries series) {
+            this.series = series;
+        }
+
+        @Override
+        public void handle(double time, double amount) {
+            series.add(time, amount);
         }
     }
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+/**
+ * Receives the samples of a series of report data one at a time, in
+ * ascending order of time.
+ * It allows reports to be rendered incrementally, without holding whole
+ * series in memory.
+ *
+ * @see         ReportDataDAO#streamHostUsedResources(String, String, int, ReportDataHandler)
+ * @since       1.2
+ */
+public interface ReportDataHandler {
+
+    /**
+     * Handles a sample of a series.
+     *
+     * @param   time    the instant of time of the sample, in minutes.
+     * @param   amount  the amount of used resources at <code>time</code>.
+     * @since           1.2
+     */
+    void handle(double time, double amount);
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+import cloudreports.database.HibernateUtil;
+import cloudreports.models.ReportData;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes report data to the active database asynchronously.
+ * Samples are put into a bounded buffer and inserted by a background thread
+ * in large JDBC batches, each one in a single transaction, instead of one
+ * transaction per sample. When the buffer is full, writers wait for the
+ * background thread to catch up.
+ * Each sample is inserted into the database that was active when it was
+ * written, even if the active database changes before it is inserted.
+ * <p>
+ * Readers of report data must call {@link #flush()} before querying the
+ * ReportData table, so that all samples written so far are visible.
+ * Samples of batches that could not be inserted are counted, and the count
+ * is taken with {@link #takeFailedSamples()}.
+ *
+ * @see         ReportDataDAO
+ * @see         ReportData
+ * @since       1.2
+ */
+public class ReportDataWriter {
+
+    /** The capacity of the buffer of pending samples. */
+    private static final int BUFFER_CAPACITY = 65536;
+
+    /** The maximum number of samples inserted in a single batch. */
+    private static final int BATCH_SIZE = 8192;
+
+    /** The statement used to insert samples. */
+    private static final String INSERT_STATEMENT = "INSERT INTO ReportData "
+            + "(SimulationId, Type, DatacenterName, CustomerName, VmId, HostId, Time, Amount) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** The buffer of pending samples. */
+    private static final BlockingQueue<PendingSample> buffer = new ArrayBlockingQueue<PendingSample>(BUFFER_CAPACITY);
+
+    /** The number of samples ever put into the buffer. */
+    private static final AtomicLong submitted = new AtomicLong();
+
+    /** The number of samples ever taken from the buffer and processed. */
+    private static long processed;
+
+    /** The number of samples that could not be buffered or inserted. */
+    private static long failed;
+
+    /** The lock used to wait for pending samples to be processed. */
+    private static final Object lock = new Object();
+
+    /** The background thread that inserts samples. */
+    private static Thread writerThread;
+
+    /**
+     * Writes a sample of report data.
+     *
+     * @param   data    the sample to be written.
+     * @since           1.2
+     */
+    public static void write(ReportData data) {
+        ensureStarted();
+        submitted.incrementAndGet();
+        try {
+            buffer.put(new PendingSample(HibernateUtil.getActiveDatabase(), data));
+        } catch (InterruptedException ex) {
+            submitted.decrementAndGet();
+            synchronized (lock) {
+                failed++;
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a list of samples of report data.
+     *
+     * @param   dataList    the samples to be written.
+     * @since               1.2
+     */
+    public static void writeAll(List<ReportData> dataList) {
+        for (ReportData data : dataList) {
+            write(data);
+        }
+    }
+
+    /**
+     * Waits until all samples written so far have been inserted into the
+     * database.
+     *
+     * @since   1.2
+     */
+    public static void flush() {
+        long target = submitted.get();
+        synchronized (lock) {
+            while (processed < target) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of samples that could not be inserted into the
+     * database since the last call, and resets it.
+     * It should be called after {@link #flush()}, so that all samples
+     * written so far are accounted for.
+     *
+     * @return  the number of samples that were not inserted.
+     * @since   1.2
+     */
+    public static long takeFailedSamples() {
+        synchronized (lock) {
+            long failedSamples = failed;
+            failed = 0;
+            return failedSamples;
+        }
+    }
+
+    /**
+     * Starts the background thread, if it has not been started yet.
+     *
+     * @since   1.2
+     */
+    private static synchronized void ensureStarted() {
+        if (writerThread != null) return;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBatches();
+            }
+        }, "ReportDataWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Takes samples from the buffer and inserts them in batches.
+     * Consecutive samples of the same database are inserted in the same
+     * batch. The connection is kept open while there are pending samples and
+     * is reopened whenever the database of the samples changes.
+     *
+     * @since   1.2
+     */
+    private static void writeBatches() {
+        List<PendingSample> pending = new ArrayList<PendingSample>(BATCH_SIZE);
+        List<ReportData> batch = new ArrayList<ReportData>(BATCH_SIZE);
+        Connection connection = null;
+        String connectionDatabase = null;
+        while (true) {
+            try {
+                pending.add(buffer.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            buffer.drainTo(pending, BATCH_SIZE - 1);
+
+            int start = 0;
+            while (start < pending.size()) {
+                String database = pending.get(start).database;
+                int end = start;
+                while (end < pending.size() && pending.get(end).database.equals(database)) {
+                    batch.add(pending.get(end).data);
+                    end++;
+                }
+
+                boolean inserted = false;
+                try {
+                    if (connection != null && !database.equals(connectionDatabase)) {
+                        closeConnection(connection);
+                        connection = null;
+                    }
+                    if (connection == null) {
+                        connection = openConnection(database);
+                        connectionDatabase = database;
+                    }
+                    insertBatch(connection, batch);
+                    inserted = true;
+                } catch (SQLException ex) {
+                    Logger.getLogger(ReportDataWriter.class.getName()).log(Level.SEVERE, null, ex);
+                    closeConnection(connection);
+                    connection = null;
+                } catch (ClassNotFoundException ex) {
+                    Logger.getLogger(ReportDataWriter.class.getName()).log(Level.SEVERE, null, ex);
+                }
+
+                synchronized (lock) {
+                    processed += batch.size();
+                    if (!inserted) failed += batch.size();
+                    lock.notifyAll();
+                }
+                batch.clear();
+                start = end;
+            }
+            pending.clear();
+
+            if (buffer.isEmpty()) {
+                closeConnection(connection);
+                connection = null;
+            }
+        }
+    }
+
+    /**
+     * Opens a connection with a database.
+     *
+     * @param   database    the name of the database, without the .cre
+     *                      extension.
+     * @return              the opened connection.
+     * @since               1.2
+     */
+    private static Connection openConnection(String database) throws ClassNotFoundException, SQLException {
+        Class.forName("org.sqlite.JDBC");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:db/" + database + ".cre");
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    /**
+     * Inserts a batch of samples in a single transaction.
+     *
+     * @param   connection  the connection with the database of the samples.
+     * @param   batch       the samples to be inserted.
+     * @since               1.2
+     */
+    private static void insertBatch(Connection connection, List<ReportData> batch) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(INSERT_STATEMENT);
+        try {
+            for (ReportData data : batch) {
+                if (data.getSimulationId() != null) statement.setInt(1, data.getSimulationId());
+                else statement.setNull(1, Types.INTEGER);
+                statement.setString(2, data.getType());
+                statement.setString(3, data.getDatacenterName());
+                statement.setString(4, data.getCustomerName());
+                if (data.getVmId() != null) statement.setInt(5, data.getVmId());
+                else statement.setNull(5, Types.INTEGER);
+                if (data.getHostId() != null) statement.setInt(6, data.getHostId());
+                else statement.setNull(6, Types.INTEGER);
+                statement.setDouble(7, data.getTime());
+                statement.setDouble(8, data.getAmount());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Closes a connection, if it is open.
+     *
+     * @param   connection  the connection to be closed.
+     * @since               1.2
+     */
+    private static void closeConnection(Connection connection) {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            Logger.getLogger(ReportDataWriter.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * A sample waiting in the buffer, with the database it belongs to.
+     *
+     * @since   1.2
+     */
+    private static class PendingSample {
+
+        /** The database that was active when the sample was written. */
+        private final String database;
+
+        /** The sample. */
+        private final ReportData data;
+
+        /**
+         * Creates a pending sample.
+         *
+         * @param   database    the name of the database, without the .cre
+         *                      extension.
+         * @param   data        the sample.
+         * @since               1.2
+         */
+        PendingSample(String database, ReportData data) {
+            this.database = database;
+            this.data = data;
+        }
+    }
+}
@@ -19,6 +19,8 @@
 
 package cloudreports.database;
 
+import cloudreports.dao.ColumnarReportDataStore;
+import cloudreports.dao.ReportDataWriter;
 import cloudreports.gui.Dialog;
 import cloudreports.models.*;
 import java.sql.Connection;
@@ -77,6 +79,7 @@ public class Database {
             createVirtualMachinesTable(stat);            
             createNetworkMapTable(stat);            
             createReportDataTable(stat);            
+            createReportDataIndexes(stat);
             createMigrationsTable(stat);            
             createSettingsTable(stat);
             createRandomPoolTable(stat);            
@@ -199,6 +202,43 @@ public class Database {
 		                        + ");");
 	}
 
+    /** 
+     * Creates the indexes of the ReportData table, if they do not exist.
+     * One index serves the series of hosts and datacenters and the other
+     * one serves the series of virtual machines and customers.
+     *
+     * @see     #connection
+     * @since   1.2
+     */     
+	private static void createReportDataIndexes(Statement stat)
+			throws SQLException {
+		stat.executeUpdate("CREATE INDEX IF NOT EXISTS ReportDataDatacenterIndex "
+		                        + "ON ReportData (DatacenterName, HostId, Type, Time);");
+		stat.executeUpdate("CREATE INDEX IF NOT EXISTS ReportDataCustomerIndex "
+		                        + "ON ReportData (CustomerName, VmId, Type, Time);");
+	}
+
+    /** 
+     * Creates the indexes of the ReportData table in the current active
+     * database, if they do not exist.
+     * It migrates databases created by previous versions.
+     *
+     * @see     #connection
+     * @since   1.2
+     */     
+    public static void migrateReportData() {
+        try {
+            establishConnection();
+            Statement stat = connection.createStatement();
+            createReportDataIndexes(stat);
+        } catch (SQLException ex) {
+            Logger.getLogger(Database.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        finally {
+        	closeConnection(connection);
+        }
+    }
+
     /** 
      * Creates the NetworkMap table.
      *
@@ -361,6 +401,8 @@ public class Database {
      * @since   1.0
      */        
     public static void cleanTempReport() {
+        ReportDataWriter.flush();
+        ColumnarReportDataStore.clear();
         Session session = HibernateUtil.getSession();        
         try {
             session.beginTransaction();
@@ -35,7 +35,7 @@ public class HibernateUtil {
     private static SessionFactory sessionFactory;
     
     /** The current active database. */
-    private static String activeDatabase;
+    private static volatile String activeDatabase;
 
     /** 
      * Provides an opened database session.
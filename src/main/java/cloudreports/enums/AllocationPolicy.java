@@ -20,6 +20,7 @@
 package cloudreports.enums;
 
 import cloudreports.extensions.ExtensionsLoader;
+import cloudreports.extensions.vmallocationpolicies.PlacementStrategy;
 import cloudreports.extensions.vmallocationpolicies.VmAllocationPolicySingleThreshold;
 import java.io.Serializable;
 import java.util.Arrays;
@@ -52,6 +53,48 @@ public enum AllocationPolicy implements Serializable {
         }
     },
     
+    /** The single threshold allocation policy with first-fit decreasing placement of
+     *  migrated virtual machines.
+     * 
+     *  @see PlacementStrategy#FIRST_FIT_DECREASING
+     */
+    SINGLE_THRESHOLD_FIRST_FIT_DECREASING {
+        @Override
+        public VmAllocationPolicy getPolicy(List<PowerHost> hostList, double upperUtilizationThreshold, 
+                                            double lowerUtilizationThreshold, double schedulingInterval,
+                                            String policyAlias) {
+            return new VmAllocationPolicySingleThreshold(hostList, upperUtilizationThreshold, PlacementStrategy.FIRST_FIT_DECREASING);
+        }
+    },
+    
+    /** The single threshold allocation policy with best-fit decreasing placement of
+     *  migrated virtual machines.
+     * 
+     *  @see PlacementStrategy#BEST_FIT_DECREASING
+     */
+    SINGLE_THRESHOLD_BEST_FIT_DECREASING {
+        @Override
+        public VmAllocationPolicy getPolicy(List<PowerHost> hostList, double upperUtilizationThreshold, 
+                                            double lowerUtilizationThreshold, double schedulingInterval,
+                                            String policyAlias) {
+            return new VmAllocationPolicySingleThreshold(hostList, upperUtilizationThreshold, PlacementStrategy.BEST_FIT_DECREASING);
+        }
+    },
+    
+    /** The single threshold allocation policy with worst-fit placement of
+     *  migrated virtual machines.
+     * 
+     *  @see PlacementStrategy#WORST_FIT
+     */
+    SINGLE_THRESHOLD_WORST_FIT {
+        @Override
+        public VmAllocationPolicy getPolicy(List<PowerHost> hostList, double upperUtilizationThreshold, 
+                                            double lowerUtilizationThreshold, double schedulingInterval,
+                                            String policyAlias) {
+            return new VmAllocationPolicySingleThreshold(hostList, upperUtilizationThreshold, PlacementStrategy.WORST_FIT);
+        }
+    },
+    
     /** The extension type. 
      *  It is used for all user-implemented new types.
      */
@@ -96,6 +139,9 @@ public enum AllocationPolicy implements Serializable {
      */     
     public static AllocationPolicy getInstance(String policyAlias) {
         if(policyAlias.equals("Single threshold")) return AllocationPolicy.SINGLE_THRESHOLD;
+        else if(policyAlias.equals("Single threshold (first-fit decreasing)")) return AllocationPolicy.SINGLE_THRESHOLD_FIRST_FIT_DECREASING;
+        else if(policyAlias.equals("Single threshold (best-fit decreasing)")) return AllocationPolicy.SINGLE_THRESHOLD_BEST_FIT_DECREASING;
+        else if(policyAlias.equals("Single threshold (worst-fit)")) return AllocationPolicy.SINGLE_THRESHOLD_WORST_FIT;
         else return AllocationPolicy.EXTENSION;
     }
 
@@ -107,7 +153,10 @@ public enum AllocationPolicy implements Serializable {
      * @since   1.0
      */       
     public static String[] getAllocationPoliciesNames() {
-        String[] nativePolicies = new String[] {"Single threshold"};
+        String[] nativePolicies = new String[] {"Single threshold",
+                                                "Single threshold (first-fit decreasing)",
+                                                "Single threshold (best-fit decreasing)",
+                                                "Single threshold (worst-fit)"};
         List<String> extensionPolicies = ExtensionsLoader.getExtensionsAliasesByType("VmAllocationPolicy");
         extensionPolicies.addAll(Arrays.asList(nativePolicies));
         
@@ -20,8 +20,10 @@
 package cloudreports.enums;
 
 import cloudreports.dao.RandomNumberDAO;
+import cloudreports.dao.RandomNumberPrefetcher;
 import cloudreports.models.RandomNumber;
 import cloudreports.utils.RandomNumberGenerator;
+import cloudreports.utils.RandomStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -39,6 +41,8 @@ public enum RandomNumbersFactory {
     
     /** 
      * Generates pseudo-random numbers using the {@link Random} class.
+     * The generator is shared and can be seeded through 
+     * {@link RandomNumberGenerator#setSeed(long)}.
      * 
      * @see Random
      */       
@@ -47,12 +51,17 @@ public enum RandomNumbersFactory {
         @Override
         public List<Double> getRandomNumbers(int amount) {
             List<Double> randomNumbers = new ArrayList<Double>();
-            Random random = new Random();
+            Random random = RandomNumberGenerator.getRandom();
             for(int i = 0; i < amount; i++) {
                 randomNumbers.add(random.nextDouble());
             }
             return randomNumbers;
         }
+
+        @Override
+        public double getRandomNumber(RandomStream stream) {
+            return stream.nextDouble();
+        }
     },
     
     /** 
@@ -73,6 +82,16 @@ public enum RandomNumbersFactory {
             }
             return randomNumbers;
         }
+
+
+        @Override
+        public double getRandomNumber(RandomStream stream) {
+            try {
+                return RandomNumberPrefetcher.next();
+            } catch (Exception e) {
+                throw new IllegalStateException("Random numbers could not be obtained from the QRBG service.", e);
+            }
+        }
     };
     
     /** The code of a specific source. */
@@ -124,6 +143,19 @@ public enum RandomNumbersFactory {
      */      
     public abstract List<Double> getRandomNumbers(int amount);
 
+    /** 
+     * Gets a single random number. Sources that generate pseudo-random
+     * numbers take it from the given stream, without any allocation; the
+     * other ones retrieve it as any other random number.
+     *
+     * @param   stream  the stream of pseudo-random numbers.
+     * @return          a random number.
+     * @since           1.2
+     */      
+    public double getRandomNumber(RandomStream stream) {
+        return getRandomNumbers(1).get(0);
+    }
+
     /** 
      * Gets the alias of this factory.
      *
@@ -22,22 +22,29 @@ package cloudreports.extensions;
 import cloudreports.utils.FileIO;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
 /**
  * Provides static methods that load user-implemented extensions using
  * the Java Reflection API.
+ * Each extension file is loaded by its own class loader, created once and
+ * reused until {@link #reset()} is called.
  * It is entirely based on the content of the extensions/classnames.xml file.
  * 
  * @author      Thiago T. Sá
@@ -45,11 +52,8 @@ import org.xml.sax.InputSource;
  */
 public class ExtensionsLoader {
     
-    /** The parameters array passed to the URLClassLoader. */
-    private static final Class<?>[] parameters = new Class[]{URL.class};
-    
-    /** The list of the loaded extension files. */
-    private static List<String> addedFiles = new ArrayList<String>();
+    /** The class loaders of the loaded extension files, by canonical path. */
+    private static final Map<String, ClassLoader> classLoaders = new HashMap<String, ClassLoader>();
     
     /** The path to the extensions folder. */
     private static String extensionsPath = FileIO.getPathOfExecutable() + "extensions";
@@ -57,48 +61,60 @@ public class ExtensionsLoader {
     /** The path to the classnames.xml file. */
     private static String classnamesXmlPath = FileIO.getPathOfExecutable() + "extensions/classnames.xml";
     
-    /** The classnames document. */
-    private static Document classnamesXml = getClassnamesXml();
+    /** The extensions declared in the classnames.xml file, by type and alias. */
+    private static final Map<String, Extension> extensions = new HashMap<String, Extension>();
+    
+    /** The aliases declared in the classnames.xml file, by type, in document order. */
+    private static final Map<String, List<String>> aliasesByType = new HashMap<String, List<String>>();
+    
+    static {
+        readClassnamesXml(getClassnamesXml());
+    }
 
     /** 
-     * Loads an extension file.
+     * Gets the class loader of an extension file, creating it the first time
+     * the file is used.
+     * Each extension file has its own class loader, whose parent is the class
+     * loader of CloudReports, so CloudSim and CloudReports classes are always
+     * loaded by the application and shared by all extensions.
      *
      * @param   canonicalPath   the canonical path to the extension file.
-     * @throws  IOException     if the system classloader could not load the
-     *                          extension.
-     * @since   1.0
+     * @return                  the class loader of the extension file.
+     * @throws  IOException     if the path of the extension file could not be
+     *                          converted to a URL.
+     * @since   1.2
      */     
-    private static void addFile(String canonicalPath) throws IOException {
-        if(addedFiles.contains(canonicalPath)) return;
+    private static synchronized ClassLoader getClassLoader(String canonicalPath) throws IOException {
+        ClassLoader classLoader = classLoaders.get(canonicalPath);
+        if(classLoader != null) return classLoader;
         
-        File f = new File(canonicalPath);
-        addURL(f.toURI().toURL());
-        addedFiles.add(canonicalPath);
+        URL url = new File(canonicalPath).toURI().toURL();
+        classLoader = new URLClassLoader(new URL[]{url}, ExtensionsLoader.class.getClassLoader());
+        classLoaders.put(canonicalPath, classLoader);
+        return classLoader;
     }
-
+    
     /** 
-     * Loads an extension file using its URL.
+     * Discards the class loaders of all extension files and the classes
+     * loaded by them, so extension files are loaded again the next time an
+     * extension is instantiated.
+     * This allows extension files to be replaced between simulations.
      *
-     * @param   url             the URL of the extension file.
-     * @throws  IOException     if the system classloader could not load the
-     *                          extension.
-     * @since   1.0
+     * @since   1.2
      */     
-    private static void addURL(URL url) throws IOException {
-        URLClassLoader sysloader = (URLClassLoader)ClassLoader.getSystemClassLoader();
-        Class<?> sysclass = URLClassLoader.class;
-        try {
-            Method method = sysclass.getDeclaredMethod("addURL", parameters);
-            method.setAccessible(true);
-            method.invoke(sysloader,new Object[]{ url }); 
-        } catch (Throwable t) {
-            throw new IOException("Error: could not add URL to system classloader");
+    public static void reset() {
+        synchronized(ExtensionsLoader.class) {
+            classLoaders.clear();
+        }
+        for(Extension extension : extensions.values()) {
+            extension.reset();
         }
     }
     
     /** 
      * Gets the aliases of all extension implementations of a given base class.
-     * It reads the classnames.xml file to get the list of aliases.
+     * The aliases are read from the classnames.xml file once, when this
+     * class is loaded.
      *
      * @param   type   			the type of the extension.
      * @return                  a list of aliases of all extension implementations
@@ -106,26 +122,17 @@ public class ExtensionsLoader {
      * @since   1.0
      */     
     public static List<String> getExtensionsAliasesByType(String type) {
-        List<String> listAliases = new ArrayList<String>();
-        if(classnamesXml == null) return listAliases;
-        
-        NodeList classNodes = classnamesXml.getElementsByTagName("class");            
-        for(int index = 0; index < classNodes.getLength(); index++) {
-        	try {
-        		if(classNodes.item(index).getAttributes().getNamedItem("type").getNodeValue().equals(type))
-        			listAliases.add(classNodes.item(index).getAttributes().getNamedItem("alias").getNodeValue());
-        	}
-        	catch (NullPointerException e) {
-        		continue;
-                }
-        }
-        
-        return listAliases;
+        List<String> listAliases = aliasesByType.get(type);
+        if(listAliases == null) return new ArrayList<String>();
+        return new ArrayList<String>(listAliases);
     }
     
     /** 
      * Gets a specific user-implemented extension object based on its base class
      * and its alias.
+     * The extension class is loaded and the constructor is resolved only
+     * the first time an extension is instantiated with a given set of
+     * constructor types.
      *
      * @param   type		            the type of the extension.
      * @param   alias                   the alias of the extension.
@@ -137,20 +144,17 @@ public class ExtensionsLoader {
      * @since                           1.0
      */      
     public static Object getExtension(String type, String alias, Class<?>[] constructorTypes, Object[] constructorArguments) {
-        String filename = getFileName(type, alias);
-        String classname = getClassnameOfExtension(type, alias);
-        if(filename == null || classname == null) return null;        
-        
-        File extensionFile = new File(extensionsPath + "/" + filename);
-        if(!extensionFile.exists() || !extensionFile.isFile()) return null;
+        Extension extension = extensions.get(getKey(type, alias));
+        if(extension == null) return null;
         
         try {
-            addFile(extensionFile.getCanonicalPath());
-            
-            if(constructorTypes != null && constructorArguments != null) 
-                return ClassLoader.getSystemClassLoader().loadClass(classname).getConstructor(constructorTypes).newInstance(constructorArguments);            
+            if(constructorTypes != null && constructorArguments != null) {
+                Constructor<?> constructor = extension.getConstructor(constructorTypes);
+                return constructor == null ? null : constructor.newInstance(constructorArguments);
+            }
             
-            else return ClassLoader.getSystemClassLoader().loadClass(classname).getConstructor().newInstance();
+            Constructor<?> constructor = extension.getConstructor(new Class<?>[0]);
+            return constructor == null ? null : constructor.newInstance();
             
         } catch (Exception ex) {
             Logger.getLogger(ExtensionsLoader.class.getName()).log(Level.SEVERE, null, ex);
@@ -159,50 +163,52 @@ public class ExtensionsLoader {
     }
 
     /** 
-     * Gets the name of the file that contains the extension class based on
-     * the base classname and the extension alias.
-     * It reads the classnames.xml file to get name of the file.
+     * Gets the key of an extension in the registry.
      *
      * @param   type		            the type of the extension.
      * @param   alias                   the alias of the extension.
-     * @return                          the name of the file that contains the
-     *                                  extension class.
-     * @since                           1.0
+     * @return                          the key of the extension.
+     * @since                           1.2
      */      
-    private static String getFileName(String type, String alias) {
-        if(classnamesXml == null) return null;
-        
-        NodeList classNodes = classnamesXml.getElementsByTagName("class");      
-        for(int index = 0; index < classNodes.getLength(); index++) {
-            if(classNodes.item(index).getAttributes().getNamedItem("type").getNodeValue().equals(type) &&
-               classNodes.item(index).getAttributes().getNamedItem("alias").getNodeValue().equals(alias))
-                return classNodes.item(index).getAttributes().getNamedItem("filename").getNodeValue();
-        }
-        
-        return null;
+    private static String getKey(String type, String alias) {
+        return type + '\u0000' + alias;
     }
     
     /** 
-     * Gets the classname of a extension class based on its base classname
-     * and its alias.
-     * It reads the classnames.xml file to get classname.
+     * Fills the registry with the extensions declared in the classnames.xml
+     * file. When an alias is declared more than once for a type, its first
+     * declaration is used.
      *
-     * @param   type		            the type of the extension.
-     * @param   alias                   the alias of the extension.
-     * @return                          the classname of the extension class.
-     * @since                           1.0
+     * @param   classnamesXml   the classnames.xml document, or
+     *                          <code>null</code> if there is none.
+     * @since                   1.2
      */     
-    private static String getClassnameOfExtension(String type, String alias) {
-        if(classnamesXml == null) return null;
+    private static void readClassnamesXml(Document classnamesXml) {
+        if(classnamesXml == null) return;
         
         NodeList classNodes = classnamesXml.getElementsByTagName("class");            
         for(int index = 0; index < classNodes.getLength(); index++) {
-            if(classNodes.item(index).getAttributes().getNamedItem("type").getNodeValue().equals(type) &&
-               classNodes.item(index).getAttributes().getNamedItem("alias").getNodeValue().equals(alias))
-                return classNodes.item(index).getAttributes().getNamedItem("name").getNodeValue();
+            NamedNodeMap attributes = classNodes.item(index).getAttributes();
+            Node typeNode = attributes.getNamedItem("type");
+            Node aliasNode = attributes.getNamedItem("alias");
+            if(typeNode == null || aliasNode == null) continue;
+            
+            String type = typeNode.getNodeValue();
+            String alias = aliasNode.getNodeValue();
+            List<String> listAliases = aliasesByType.get(type);
+            if(listAliases == null) {
+                listAliases = new ArrayList<String>();
+                aliasesByType.put(type, listAliases);
+            }
+            listAliases.add(alias);
+            
+            Node nameNode = attributes.getNamedItem("name");
+            Node filenameNode = attributes.getNamedItem("filename");
+            String key = getKey(type, alias);
+            if(nameNode != null && filenameNode != null && !extensions.containsKey(key)) {
+                extensions.put(key, new Extension(nameNode.getNodeValue(), filenameNode.getNodeValue()));
+            }
         }
-        
-        return null;
     }
     
     /** 
@@ -232,5 +238,75 @@ public class ExtensionsLoader {
             return null;
         }
     }
+    
+    /**
+     * An extension declared in the classnames.xml file, with its class and
+     * constructors resolved on first use.
+     *
+     * @since   1.2
+     */
+    private static class Extension {
+        
+        /** The name of the extension class. */
+        private final String classname;
+        
+        /** The name of the file that contains the extension class. */
+        private final String filename;
+        
+        /** The extension class, once it has been loaded. */
+        private Class<?> extensionClass;
+        
+        /** The resolved constructors of the extension class, by parameter types. */
+        private final Map<List<Class<?>>, Constructor<?>> constructors = new HashMap<List<Class<?>>, Constructor<?>>();
+        
+        /**
+         * Creates an extension.
+         *
+         * @param   classname   the name of the extension class.
+         * @param   filename    the name of the file that contains the class.
+         * @since               1.2
+         */
+        Extension(String classname, String filename) {
+            this.classname = classname;
+            this.filename = filename;
+        }
+        
+        /**
+         * Gets a constructor of the extension class, loading the class from
+         * the class loader of its file if needed.
+         *
+         * @param   constructorTypes    the types used by the constructor.
+         * @return                      the constructor, or <code>null</code>
+         *                              if the extension file does not exist.
+         * @since                       1.2
+         */
+        synchronized Constructor<?> getConstructor(Class<?>[] constructorTypes) throws IOException, ClassNotFoundException, NoSuchMethodException {
+            List<Class<?>> key = Arrays.asList(constructorTypes);
+            Constructor<?> constructor = constructors.get(key);
+            if(constructor != null) return constructor;
+            
+            if(extensionClass == null) {
+                File extensionFile = new File(extensionsPath + "/" + filename);
+                if(!extensionFile.exists() || !extensionFile.isFile()) return null;
+                
+                ClassLoader classLoader = getClassLoader(extensionFile.getCanonicalPath());
+                extensionClass = Class.forName(classname, true, classLoader);
+            }
+            
+            constructor = extensionClass.getConstructor(constructorTypes);
+            constructors.put(key, constructor);
+            return constructor;
+        }
+        
+        /**
+         * Discards the loaded class and its resolved constructors.
+         *
+         * @since   1.2
+         */
+        synchronized void reset() {
+            extensionClass = null;
+            constructors.clear();
+        }
+    }
         
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions;
+
+import cloudreports.extensions.vmallocationpolicies.VmAllocationPolicySingleThreshold;
+import java.util.HashMap;
+import java.util.Map;
+import org.cloudbus.cloudsim.power.PowerHost;
+
+/**
+ * Keeps the most recent CPU and RAM utilization samples of every host in
+ * fixed-size primitive ring buffers, so allocation policies can get
+ * utilization rates in constant time.
+ * Samples are taken at every monitoring interval, exactly like the monitored
+ * used resources of the {@link cloudreports.reports.DataCollector}, and are
+ * stored as percentages.
+ *
+ * @see         VmAllocationPolicySingleThreshold#getHostCpuUtilizationRate(PowerHost)
+ * @since       1.2
+ */
+public class HostUtilizationMonitor {
+
+    /** The number of samples kept for each host. */
+    private static final int SAMPLES = 2;
+
+    /** The monitored datacenters, by name. */
+    private Map<String, PowerDatacenter> datacenters;
+
+    /** The windows of samples of each datacenter, by name. */
+    private Map<String, Window> windows;
+
+    /**
+     * Indicates whether the data collector must also keep monitored used
+     * resources, because some datacenter uses an allocation policy that may
+     * read them.
+     */
+    private boolean dataCollectorRequired;
+
+    /**
+     * Creates a monitor for a set of datacenters.
+     *
+     * @param   datacenters the datacenters to be monitored, by name.
+     * @since               1.2
+     */
+    public HostUtilizationMonitor(Map<String, PowerDatacenter> datacenters) {
+        this.datacenters = datacenters;
+        this.windows = new HashMap<String, Window>();
+        for (PowerDatacenter datacenter : datacenters.values()) {
+            int maxHostId = -1;
+            for (PowerHost host : datacenter.<PowerHost>getHostList()) {
+                maxHostId = Math.max(maxHostId, host.getId());
+            }
+            windows.put(datacenter.getName(), new Window(maxHostId + 1));
+
+            if (datacenter.getVmAllocationPolicy().getClass() != VmAllocationPolicySingleThreshold.class) {
+                dataCollectorRequired = true;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the data collector must also keep monitored used
+     * resources. It is the case when a datacenter uses an allocation policy
+     * implemented as an extension.
+     *
+     * @return  <code>true</code> if the data collector is required;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isDataCollectorRequired() {
+        return dataCollectorRequired;
+    }
+
+    /**
+     * Samples the current CPU and RAM utilization of all hosts of all
+     * monitored datacenters.
+     *
+     * @since   1.2
+     */
+    public void collect() {
+        for (PowerDatacenter datacenter : datacenters.values()) {
+            Window window = windows.get(datacenter.getName());
+            for (PowerHost host : datacenter.<PowerHost>getHostList()) {
+                window.add(host.getId(),
+                           host.getUtilizationOfCpuMips() / host.getTotalMips() * 100,
+                           host.getUtilizationOfRam() / host.getRam() * 100);
+            }
+        }
+    }
+
+    /**
+     * Gets the CPU utilization rate of a host, averaging its current
+     * utilization rate with the monitored samples.
+     *
+     * @param   host                the host.
+     * @param   currentUtilization  the current CPU utilization rate of the host.
+     * @return                      the averaged CPU utilization rate.
+     * @since                       1.2
+     */
+    public double getCpuUtilizationRate(PowerHost host, double currentUtilization) {
+        Window window = windows.get(host.getDatacenter().getName());
+        if (window == null) return currentUtilization;
+        return window.average(window.cpu, host.getId(), currentUtilization);
+    }
+
+    /**
+     * Gets the RAM utilization rate of a host, averaging its current
+     * utilization rate with the monitored samples.
+     *
+     * @param   host                the host.
+     * @param   currentUtilization  the current RAM utilization rate of the host.
+     * @return                      the averaged RAM utilization rate.
+     * @since                       1.2
+     */
+    public double getRamUtilizationRate(PowerHost host, double currentUtilization) {
+        Window window = windows.get(host.getDatacenter().getName());
+        if (window == null) return currentUtilization;
+        return window.average(window.ram, host.getId(), currentUtilization);
+    }
+
+    /**
+     * The ring buffers of the hosts of a datacenter, indexed by host id.
+     *
+     * @since   1.2
+     */
+    private static class Window {
+
+        /** The CPU utilization samples, <code>SAMPLES</code> per host. */
+        private double[] cpu;
+
+        /** The RAM utilization samples, <code>SAMPLES</code> per host. */
+        private double[] ram;
+
+        /** The position of the oldest sample of each host. */
+        private int[] heads;
+
+        /** The number of samples of each host. */
+        private int[] counts;
+
+        /**
+         * Creates empty ring buffers.
+         *
+         * @param   numberOfHosts   the number of hosts, i.e. the largest host
+         *                          id plus one.
+         * @since                   1.2
+         */
+        Window(int numberOfHosts) {
+            cpu = new double[numberOfHosts * SAMPLES];
+            ram = new double[numberOfHosts * SAMPLES];
+            heads = new int[numberOfHosts];
+            counts = new int[numberOfHosts];
+        }
+
+        /**
+         * Adds a sample of a host, replacing its oldest one when the buffer
+         * is full.
+         *
+         * @param   hostId          the id of the host.
+         * @param   cpuUtilization  the CPU utilization, in percent.
+         * @param   ramUtilization  the RAM utilization, in percent.
+         * @since                   1.2
+         */
+        void add(int hostId, double cpuUtilization, double ramUtilization) {
+            int position;
+            if (counts[hostId] < SAMPLES) {
+                position = (heads[hostId] + counts[hostId]) % SAMPLES;
+                counts[hostId]++;
+            } else {
+                position = heads[hostId];
+                heads[hostId] = (heads[hostId] + 1) % SAMPLES;
+            }
+            cpu[hostId * SAMPLES + position] = cpuUtilization;
+            ram[hostId * SAMPLES + position] = ramUtilization;
+        }
+
+        /**
+         * Averages a current utilization rate with the samples of a host.
+         * Samples are added from the oldest to the newest, in the same order
+         * the monitored used resources were averaged before, so decisions
+         * based on the result do not change.
+         *
+         * @param   samples             the CPU or RAM samples.
+         * @param   hostId              the id of the host.
+         * @param   currentUtilization  the current utilization rate.
+         * @return                      the averaged utilization rate.
+         * @since                       1.2
+         */
+        double average(double[] samples, int hostId, double currentUtilization) {
+            if (hostId >= counts.length) return currentUtilization;
+            double utilization = currentUtilization;
+            int count = counts[hostId];
+            for (int i = 0; i < count; i++) {
+                utilization += samples[hostId * SAMPLES + (heads[hostId] + i) % SAMPLES] / 100;
+            }
+            return utilization / (count + 1);
+        }
+    }
+}
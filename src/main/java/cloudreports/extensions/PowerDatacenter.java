@@ -20,6 +20,7 @@
 package cloudreports.extensions;
 
 import cloudreports.extensions.vmallocationpolicies.VmAllocationPolicyExtensible;
+import cloudreports.extensions.vmallocationpolicies.VmAllocationPolicySingleThreshold;
 import cloudreports.models.Migration;
 import cloudreports.simulation.Simulation;
 import java.util.List;
@@ -107,6 +108,9 @@ public class PowerDatacenter extends org.cloudbus.cloudsim.power.PowerDatacenter
                     minTime = time;
                 }
             }
+            if (getVmAllocationPolicy() instanceof VmAllocationPolicySingleThreshold) {
+                ((VmAllocationPolicySingleThreshold) getVmAllocationPolicy()).invalidateHostCapacityIndex();
+            }
             setPower(getPower() + timeframePower);
             
             if((currentTime - this.lastMonitoringTime) >= this.getMonitoringInterval()) {
@@ -143,7 +147,11 @@ public class PowerDatacenter extends org.cloudbus.cloudsim.power.PowerDatacenter
                 }
                 
                 //Collect monitored used resources
-                Simulation.getDataCollector().collectMonitoredUsedResources();
+                HostUtilizationMonitor hostUtilizationMonitor = Simulation.getHostUtilizationMonitor();
+                hostUtilizationMonitor.collect();
+                if (hostUtilizationMonitor.isDataCollectorRequired()) {
+                    Simulation.getDataCollector().collectMonitoredUsedResources();
+                }
             }
 
             // schedules an event to the next time
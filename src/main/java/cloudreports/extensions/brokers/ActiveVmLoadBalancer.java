@@ -6,14 +6,8 @@
 package cloudreports.extensions.brokers;
 
 import cloudreports.enums.VirtualMachineState;
-import cloudreports.event.CloudSimEvent;
-import cloudreports.event.CloudSimEventListener;
-import cloudreports.event.CloudSimEvents;
 import cloudreports.event.CloudsimObservable;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Vm;
 
@@ -22,20 +16,21 @@ import org.cloudbus.cloudsim.Vm;
  *
  * @author AjinkyaWavare
  */
-public class ActiveVmLoadBalancer extends Broker implements CloudSimEventListener {
+public class ActiveVmLoadBalancer extends Broker implements BrokerListener {
 
     /**
-     * Holds the count current active allocations on each VM
+     * Holds the count current active allocations on each VM, ordered from the
+     * least to the most loaded VM
      */
-    private Map<Integer, Integer> currentAllocationCounts;
+    private VmLoadHeap currentAllocationCounts;
     int currentDataCenterId;
 
     public ActiveVmLoadBalancer(String name) throws Exception {
         super(name);
-        addCloudSimEventListener(this);
+        addBrokerListener(this);
         this.currentDataCenterId = 0;
         this.vmStatesList = vmStatesList;
-        this.currentAllocationCounts = Collections.synchronizedMap(new HashMap<Integer, Integer>());
+        this.currentAllocationCounts = new VmLoadHeap();
     }
 
     /**
@@ -44,56 +39,34 @@ public class ActiveVmLoadBalancer extends Broker implements CloudSimEventListene
      */
     @Override
     public int getNextAvailableVm() {
-        int vmId = -1;
-        //Find the vm with least number of allocations
-        //If all available vms are not allocated, allocated the new ones
+        //If all available vms are not allocated, add the new ones, which come
+        //before the allocated ones
         if (currentAllocationCounts.size() < vmStatesList.size()) {
-            for (int availableVmId : vmStatesList.keySet()) {
-                if (!currentAllocationCounts.containsKey(availableVmId)) {
-                    vmId = availableVmId;
-                    break;
-                }
-            }
-        } else {
-            int currCount;
-            int minCount = Integer.MAX_VALUE;
-
-            for (int thisVmId : currentAllocationCounts.keySet()) {
-                currCount = currentAllocationCounts.get(thisVmId);
-                if (currCount < minCount) {
-                    minCount = currCount;
-                    vmId = thisVmId;
+            synchronized (vmStatesList) {
+                for (int availableVmId : vmStatesList.keySet()) {
+                    currentAllocationCounts.add(availableVmId);
                 }
             }
         }
 
+        //Find the vm with least number of allocations
+        int vmId = currentAllocationCounts.peek();
+
         allocatedVm(vmId);
 
         return vmId;
 
     }
 
-    public void cloudSimEventFired(CloudSimEvent e) {
-        if (e.getId() == CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM) {
-            int vmId = (Integer) e.getParameter("vmId");
-
-            Integer currCount = currentAllocationCounts.remove(vmId);
-            if (currCount == null) {
-                currCount = 1;
-            } else {
-                currCount++;
-            }
+    public void onCloudletAllocated(int vmId) {
+        currentAllocationCounts.increment(vmId);
+    }
 
-            currentAllocationCounts.put(vmId, currCount);
+    public void onCloudletFinished(int vmId) {
+        currentAllocationCounts.decrement(vmId);
+    }
 
-        } else if (e.getId() == CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET) {
-            int vmId = (Integer) e.getParameter("vmId");
-            Integer currCount = currentAllocationCounts.remove(vmId);
-            if (currCount != null) {
-                currCount--;
-                currentAllocationCounts.put(vmId, currCount);
-            }
-        }
+    public void onAllVmsCreated() {
     }
 
     @Override
@@ -18,6 +18,7 @@
  */
 package cloudreports.extensions.brokers;
 
+import cloudreports.business.SettingBusiness;
 import cloudreports.dao.CustomerRegistryDAO;
 import cloudreports.enums.BrokerPolicy;
 import cloudreports.enums.VirtualMachineState;
@@ -26,6 +27,7 @@ import cloudreports.event.CloudSimEventListener;
 import cloudreports.event.CloudSimEvents;
 import cloudreports.event.CloudsimObservable;
 import cloudreports.models.CustomerRegistry;
+import cloudreports.simulation.EnvironmentSnapshot;
 import cloudreports.utils.RandomNumberGenerator;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -56,6 +58,10 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
      */
     private long maxLengthOfCloudlets;
     private List<CloudSimEventListener> listeners;
+    /**
+     * The listeners of the lifecycle notifications of this broker.
+     */
+    private List<BrokerListener> brokerListeners;
     /**
      * The cloudlet id.
      */
@@ -69,6 +75,19 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
      * Holds the count of allocations for each VM
      */
     protected Map<Integer, Integer> vmAllocationCounts;
+    /**
+     * The created virtual machines, indexed by id.
+     */
+    private Map<Integer, Vm> vmsCreatedById;
+    /**
+     * Indicates whether finished cloudlets are only recorded in the cloudlet
+     * statistics, instead of being kept in the submitted and received lists.
+     */
+    private boolean steadyStateWorkload;
+    /**
+     * The statistics of the cloudlets returned to this broker.
+     */
+    private CloudletStatistics cloudletStatistics;
 
     /*
     *GCD calculations of various attributes of the Virtual Machines
@@ -123,15 +142,20 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
     public Broker(String name) throws Exception {
         super(name);
         listeners = new ArrayList<CloudSimEventListener>();
+        brokerListeners = new ArrayList<BrokerListener>();
+        EnvironmentSnapshot environment = EnvironmentSnapshot.getCurrent();
         CustomerRegistryDAO crDAO = new CustomerRegistryDAO();
-        CustomerRegistry cr = crDAO.getCustomerRegistry(name);
+        CustomerRegistry cr = environment != null ? environment.getCustomer(name) : crDAO.getCustomerRegistry(name);
         this.cloudletId = cr.getUtilizationProfile().getNumOfCloudlets();
         this.maxLengthOfCloudlets = cr.getUtilizationProfile().getLength();
         vmStatesList = Collections.synchronizedMap(new HashMap<Integer, VirtualMachineState>());
         vmPriority = new HashMap<Integer, Integer>();
         vmAllocationCounts = new HashMap<Integer, Integer>();
+        vmsCreatedById = new HashMap<Integer, Vm>();
+        steadyStateWorkload = SettingBusiness.getSnapshot().isSteadyStateWorkloadEnabled();
+        cloudletStatistics = new CloudletStatistics();
         //Log.printLine(crDAO.getNumOfVms(cr.getId()));
-        totalVm = crDAO.getNumOfVms(cr.getId());
+        totalVm = environment != null ? environment.getNumOfVms(name) : crDAO.getNumOfVms(cr.getId());
     }
 
     /**
@@ -167,13 +191,14 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
         //Log.printLine(ev.toString());
         if (result == CloudSimTags.TRUE) {
             getVmsToDatacentersMap().put(vmId, datacenterId);
-            getVmsCreatedList().add(VmList.getById(getVmList(), vmId));
+            Vm vm = VmList.getById(getVmList(), vmId);
+            getVmsCreatedList().add(vm);
+            vmsCreatedById.put(vmId, vm);
             vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
             if (getVmsCreatedList().size() == totalVm) {
-                CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_ALL_VM_CREATED);
-                fireCloudSimEvent(e);
+                allVmsCreated();
             }
-            Log.printLine(CloudSim.clock() + ": " + getName() + ": VM #" + vmId + " has been created in " + getDatacenterCharacteristicsList().get(datacenterId).getResourceName() + ", Host #" + VmList.getById(getVmsCreatedList(), vmId).getHost().getId() + " " + vmStatesList.get(vmId));
+            Log.printLine(CloudSim.clock() + ": " + getName() + ": VM #" + vmId + " has been created in " + getDatacenterCharacteristicsList().get(datacenterId).getResourceName() + ", Host #" + vm.getHost().getId() + " " + vmStatesList.get(vmId));
         } else {
             Log.printLine(CloudSim.clock() + ": " + getName() + ": Creation of VM #" + vmId + " failed in " + getDatacenterCharacteristicsList().get(datacenterId).getResourceName());
         }
@@ -200,12 +225,13 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
     @Override
     protected void processCloudletReturn(SimEvent ev) {
         Cloudlet cloudlet = (Cloudlet) ev.getData();
-        getCloudletReceivedList().add(cloudlet);
+        cloudletStatistics.add(cloudlet);
+        if (!steadyStateWorkload) {
+            getCloudletReceivedList().add(cloudlet);
+        }
         //Log.printLine(CloudSim.clock() + ": " + getName() + ": Cloudlet " + cloudlet.getCloudletId() + " received");
         cloudletsSubmitted -= 1;
-        CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET);
-        e.addParameter("vmId", cloudlet.getVmId());
-        fireCloudSimEvent(e);
+        cloudletFinished(cloudlet.getVmId());
         boolean setCloudletLength = cloudlet.setCloudletLength(maxLengthOfCloudlets);
         if (setCloudletLength == true) {
             Cloudlet newCloudlet = new Cloudlet(this.cloudletId,
@@ -233,60 +259,85 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
 
     /**
      * Submits cloudlets to be executed in virtual machines.
+     * Submission stops at the first cloudlet for which
+     * {@link #getNextAvailableVm()} returns -1, since no virtual machine is
+     * available for the remaining cloudlets either. Cloudlets that were not
+     * submitted are kept in the cloudlet list, in their original order.
      *
      * @since 1.0
      */
     @Override
     protected void submitCloudlets() {
+        List<Cloudlet> cloudletList = getCloudletList();
+        int size = cloudletList.size();
+        int waiting = 0;
+        int index = 0;
 
-        for (Cloudlet cloudlet : getCloudletList()) {
+        for (; index < size; index++) {
+            Cloudlet cloudlet = cloudletList.get(index);
 
             if (roundRobinDataCenter == 1) {
                 if (cloudlet.getVmId() == -1) { //If user didn't bind this cloudlet and it has not been executed yet
                     cloudlet.setVmId(getVmsCreatedList().get(0).getId());
                 }
-            } //if (cloudlet.getVmId() == -1) { //If user didn't bind this cloudlet and it has not been executed yet
-            else {
-                cloudlet.setVmId(getNextAvailableVm());
+            } else {
+                int vmId = getNextAvailableVm();
+                cloudlet.setVmId(vmId);
+                if (vmId == -1) { //No VM is available, so postpone submission of this and all remaining cloudlets
+                    break;
+                }
             }
-            //}
 
             //Check if the cloudlet VM has been allocated
-            Vm cloudletVm = null;
-            for (Vm vm : getVmsCreatedList()) {
-                if (vm.getId() == cloudlet.getVmId()) {
-                    cloudletVm = vm;
-                }
-            }
+            Vm cloudletVm = vmsCreatedById.get(cloudlet.getVmId());
 
             //If the VM is allocated, send cloudlet
-            if (cloudletVm != null) {
-                //Log.printLine(CloudSim.clock() + ": " + getName() + ": Sending cloudlet " + cloudlet.getCloudletId() + " to VM #" + cloudletVm.getId());
-                cloudlet.setVmId(cloudletVm.getId());
-
-                try {
-                    sendNow(getVmsToDatacentersMap().get(cloudletVm.getId()), CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
-                } catch (NullPointerException e) {
-                    continue;
+            if (cloudletVm != null && sendCloudlet(cloudlet, cloudletVm)) {
+                if (!steadyStateWorkload) {
+                    getCloudletSubmittedList().add(cloudlet);
                 }
-
-                cloudletsSubmitted += 1;
-                //Notify load balancer
-                CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM);
-                e.addParameter("vmId", cloudletVm.getId());
-                fireCloudSimEvent(e);
-
-                getCloudletSubmittedList().add(cloudlet);
             } else { //The VM is not allocated yet, so postpone submission
-                //Log.printLine(CloudSim.clock() + ": " + getName() + ": Postponing execution of cloudlet " + cloudlet.getCloudletId() + ": bount VM not available");
+                cloudletList.set(waiting++, cloudlet);
             }
         }
 
         // remove submitted cloudlets from waiting list
-        for (Cloudlet cloudlet : getCloudletSubmittedList()) {
+        cloudletList.subList(waiting, index).clear();
+    }
 
-            getCloudletList().remove(cloudlet);
+    /**
+     * Sends a cloudlet to the datacenter of its virtual machine and notifies
+     * the load balancer.
+     *
+     * @param cloudlet the cloudlet to be sent.
+     * @param cloudletVm the virtual machine of the cloudlet.
+     * @return <code>true</code> if the cloudlet was sent; <code>false</code>
+     * if the datacenter of the virtual machine is unknown.
+     * @since 1.2
+     */
+    private boolean sendCloudlet(Cloudlet cloudlet, Vm cloudletVm) {
+        //Log.printLine(CloudSim.clock() + ": " + getName() + ": Sending cloudlet " + cloudlet.getCloudletId() + " to VM #" + cloudletVm.getId());
+        Integer datacenterId = getVmsToDatacentersMap().get(cloudletVm.getId());
+        if (datacenterId == null) {
+            return false;
         }
+
+        sendNow(datacenterId, CloudSimTags.CLOUDLET_SUBMIT, cloudlet);
+        cloudletsSubmitted += 1;
+        //Notify load balancer
+        cloudletAllocated(cloudletVm.getId());
+        return true;
+    }
+
+    /**
+     * Destroys the virtual machines created by this broker.
+     *
+     * @since 1.2
+     */
+    @Override
+    protected void clearDatacenters() {
+        super.clearDatacenters();
+        vmsCreatedById.clear();
     }
 
     /**
@@ -320,6 +371,29 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
         setVmsAcks(0);
     }
 
+    /**
+     * Gets the statistics of the cloudlets returned to this broker.
+     *
+     * @return the cloudlet statistics.
+     * @since 1.2
+     */
+    public CloudletStatistics getCloudletStatistics() {
+        return cloudletStatistics;
+    }
+
+    /**
+     * Indicates whether finished cloudlets are only recorded in the cloudlet
+     * statistics. In this mode, the submitted and received cloudlet lists
+     * stay empty, so memory does not grow with the length of the simulation.
+     *
+     * @return <code>true</code> if the steady-state workload mode is enabled;
+     * <code>false</code> otherwise.
+     * @since 1.2
+     */
+    public boolean isSteadyStateWorkload() {
+        return steadyStateWorkload;
+    }
+
     /* Cloudsim Observable interface methods */
     public void addCloudSimEventListener(CloudSimEventListener l) {
         listeners.add(l);
@@ -335,6 +409,76 @@ public abstract class Broker extends DatacenterBroker implements CloudsimObserva
         listeners.remove(l);
     }
 
+    /**
+     * Registers a listener of the lifecycle notifications of this broker.
+     *
+     * @param l the listener.
+     * @since 1.2
+     */
+    public void addBrokerListener(BrokerListener l) {
+        brokerListeners.add(l);
+    }
+
+    /**
+     * Removes a listener of the lifecycle notifications of this broker.
+     *
+     * @param l the listener.
+     * @since 1.2
+     */
+    public void removeBrokerListener(BrokerListener l) {
+        brokerListeners.remove(l);
+    }
+
+    /**
+     * Notifies listeners that a cloudlet was sent to a VM. A
+     * {@link CloudSimEvent} is only created if there are generic listeners.
+     *
+     * @param vmId the id of the VM.
+     * @since 1.2
+     */
+    private void cloudletAllocated(int vmId) {
+        for (int i = 0; i < brokerListeners.size(); i++) {
+            brokerListeners.get(i).onCloudletAllocated(vmId);
+        }
+        if (!listeners.isEmpty()) {
+            CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM);
+            e.addParameter("vmId", vmId);
+            fireCloudSimEvent(e);
+        }
+    }
+
+    /**
+     * Notifies listeners that a VM returned a finished cloudlet. A
+     * {@link CloudSimEvent} is only created if there are generic listeners.
+     *
+     * @param vmId the id of the VM.
+     * @since 1.2
+     */
+    private void cloudletFinished(int vmId) {
+        for (int i = 0; i < brokerListeners.size(); i++) {
+            brokerListeners.get(i).onCloudletFinished(vmId);
+        }
+        if (!listeners.isEmpty()) {
+            CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET);
+            e.addParameter("vmId", vmId);
+            fireCloudSimEvent(e);
+        }
+    }
+
+    /**
+     * Notifies listeners that all VMs of this broker have been created.
+     *
+     * @since 1.2
+     */
+    private void allVmsCreated() {
+        for (int i = 0; i < brokerListeners.size(); i++) {
+            brokerListeners.get(i).onAllVmsCreated();
+        }
+        if (!listeners.isEmpty()) {
+            fireCloudSimEvent(new CloudSimEvent(CloudSimEvents.EVENT_ALL_VM_CREATED));
+        }
+    }
+
     /**
      * Used internally to update VM allocation statistics. Should be called by
      * all impelementing classes to notify when a new VM is allocated.
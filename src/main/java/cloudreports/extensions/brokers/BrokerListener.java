@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.brokers;
+
+/**
+ * Receives the lifecycle notifications of a {@link Broker}.
+ * Notifications carry primitive arguments, so they are delivered without
+ * creating any object. Listeners that need the generic
+ * {@link cloudreports.event.CloudSimEvent} objects can still be registered
+ * with {@link Broker#addCloudSimEventListener(cloudreports.event.CloudSimEventListener)}.
+ *
+ * @see         Broker#addBrokerListener(BrokerListener)
+ * @since       1.2
+ */
+public interface BrokerListener {
+
+    /**
+     * Called when a cloudlet is sent to a virtual machine.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @since           1.2
+     */
+    void onCloudletAllocated(int vmId);
+
+    /**
+     * Called when a virtual machine returns a finished cloudlet.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @since           1.2
+     */
+    void onCloudletFinished(int vmId);
+
+    /**
+     * Called when all virtual machines of the broker have been created.
+     *
+     * @since   1.2
+     */
+    void onAllVmsCreated();
+}
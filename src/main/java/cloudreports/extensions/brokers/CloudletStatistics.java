@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.brokers;
+
+import org.cloudbus.cloudsim.Cloudlet;
+
+/**
+ * Accumulates statistics of the cloudlets returned to a broker in primitive
+ * fields, so they can be computed without keeping the cloudlets.
+ *
+ * @see         Broker#getCloudletStatistics()
+ * @since       1.2
+ */
+public class CloudletStatistics {
+
+    /** The number of returned cloudlets. */
+    private long count;
+
+    /** The number of cloudlets that finished successfully. */
+    private long successCount;
+
+    /** The total length of the returned cloudlets, in MI. */
+    private long totalLength;
+
+    /** The sum of the execution times of the returned cloudlets. */
+    private double totalExecutionTime;
+
+    /** The shortest execution time of a returned cloudlet. */
+    private double minExecutionTime = Double.MAX_VALUE;
+
+    /** The longest execution time of a returned cloudlet. */
+    private double maxExecutionTime;
+
+    /** The sum of the waiting times of the returned cloudlets. */
+    private double totalWaitingTime;
+
+    /**
+     * Records a returned cloudlet.
+     *
+     * @param   cloudlet    the cloudlet.
+     * @since               1.2
+     */
+    public void add(Cloudlet cloudlet) {
+        count++;
+        if (cloudlet.getCloudletStatus() == Cloudlet.SUCCESS) {
+            successCount++;
+        }
+        totalLength += cloudlet.getCloudletLength();
+
+        double executionTime = cloudlet.getFinishTime() - cloudlet.getExecStartTime();
+        totalExecutionTime += executionTime;
+        minExecutionTime = Math.min(minExecutionTime, executionTime);
+        maxExecutionTime = Math.max(maxExecutionTime, executionTime);
+        totalWaitingTime += cloudlet.getWaitingTime();
+    }
+
+    /**
+     * Gets the number of returned cloudlets.
+     *
+     * @return  the number of cloudlets.
+     * @since   1.2
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of cloudlets that finished successfully.
+     *
+     * @return  the number of successful cloudlets.
+     * @since   1.2
+     */
+    public long getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * Gets the total length of the returned cloudlets.
+     *
+     * @return  the total length, in MI.
+     * @since   1.2
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /**
+     * Gets the average execution time of the returned cloudlets.
+     *
+     * @return  the average execution time, or 0 if no cloudlet returned.
+     * @since   1.2
+     */
+    public double getAverageExecutionTime() {
+        return count == 0 ? 0 : totalExecutionTime / count;
+    }
+
+    /**
+     * Gets the shortest execution time of a returned cloudlet.
+     *
+     * @return  the shortest execution time, or 0 if no cloudlet returned.
+     * @since   1.2
+     */
+    public double getMinExecutionTime() {
+        return count == 0 ? 0 : minExecutionTime;
+    }
+
+    /**
+     * Gets the longest execution time of a returned cloudlet.
+     *
+     * @return  the longest execution time.
+     * @since   1.2
+     */
+    public double getMaxExecutionTime() {
+        return maxExecutionTime;
+    }
+
+    /**
+     * Gets the average waiting time of the returned cloudlets.
+     *
+     * @return  the average waiting time, or 0 if no cloudlet returned.
+     * @since   1.2
+     */
+    public double getAverageWaitingTime() {
+        return count == 0 ? 0 : totalWaitingTime / count;
+    }
+}
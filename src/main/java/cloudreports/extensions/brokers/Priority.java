@@ -6,14 +6,12 @@
 package cloudreports.extensions.brokers;
 
 import cloudreports.enums.VirtualMachineState;
-import cloudreports.event.CloudSimEvent;
-import cloudreports.event.CloudSimEventListener;
-import cloudreports.event.CloudSimEvents;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +24,7 @@ import org.cloudbus.cloudsim.Vm;
  *
  * @author AjinkyaWavare
  */
-public class Priority extends Broker implements CloudSimEventListener {
+public class Priority extends Broker implements BrokerListener {
 
     /**
      * Holds the count current active allocations on each VM
@@ -34,13 +32,26 @@ public class Priority extends Broker implements CloudSimEventListener {
     private Map<Integer, Integer> currentAllocationCounts;
     int currentDataCenterId;
     private LinkedHashMap<Integer, Integer> vmSortedPriority;
+    /**
+     * Holds the ids of the VMs, from the highest to the lowest priority
+     */
+    private int[] vmsByPriority;
+    /**
+     * Holds the position of each VM in vmsByPriority, indexed by VM id
+     */
+    private int[] priorityRanks;
+    /**
+     * Holds the positions in vmsByPriority of the VMs whose state is AVAILABLE
+     */
+    private BitSet availableVms;
     private static int allVMCreated = 0;
     
     public Priority(String name) throws Exception {
         super(name);
         this.currentDataCenterId = 0;
         this.vmStatesList = vmStatesList;
-        addCloudSimEventListener(this);
+        this.availableVms = new BitSet();
+        addBrokerListener(this);
     }
 
     /**
@@ -59,16 +70,12 @@ public class Priority extends Broker implements CloudSimEventListener {
 
         } else {*/
         int vmId = -1;
-        
-        int vmid;
-        for (Iterator<Integer> itr = vmSortedPriority.keySet().iterator(); itr.hasNext();) {
-            //Log.printLine(vmPriority.get(vmid) + " " + vmStatesList.get(vmid));
-            vmid = itr.next();
-            //Log.printLine(vmid + " " + vmStatesList.get(vmid));
-            if (vmStatesList.get(vmid) == VirtualMachineState.AVAILABLE) {
-                vmId = vmid;
-                //Log.printLine("VMID with priority is given. :"  + vmSortedPriority.get(vmid) + " " + vmid );
-                break;
+
+        if (vmsByPriority != null) {
+            int rank = availableVms.nextSetBit(0);
+            if (rank >= 0) {
+                vmId = vmsByPriority[rank];
+                //Log.printLine("VMID with priority is given. :"  + vmSortedPriority.get(vmId) + " " + vmId );
             }
         }
 
@@ -79,19 +86,62 @@ public class Priority extends Broker implements CloudSimEventListener {
 
     }
     //Cloud Listener Functions
-    public void cloudSimEventFired(CloudSimEvent e) {
-        if (e.getId() == CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM) {
-            int vmId = (Integer) e.getParameter("vmId");
-            vmStatesList.put(vmId, VirtualMachineState.BUSY);
-        } else if (e.getId() == CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET) {
-            int vmId = (Integer) e.getParameter("vmId");
-            vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
-        } else if (e.getId() == CloudSimEvents.EVENT_ALL_VM_CREATED) {
-            calculatePriority();
-            allVMCreated = 1;
-            vmSortedPriority = sortHashMapByValue((HashMap<Integer, Integer>) vmPriority);
+    public void onCloudletAllocated(int vmId) {
+        vmStatesList.put(vmId, VirtualMachineState.BUSY);
+        setAvailable(vmId, false);
+    }
+
+    public void onCloudletFinished(int vmId) {
+        vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
+        setAvailable(vmId, true);
+    }
+
+    public void onAllVmsCreated() {
+        calculatePriority();
+        allVMCreated = 1;
+        vmSortedPriority = sortHashMapByValue((HashMap<Integer, Integer>) vmPriority);
+        rankVms();
+    }
+
+    /**
+     * Numbers the VMs from the highest to the lowest priority and marks the
+     * available ones.
+     *
+     * @since 1.2
+     */
+    private void rankVms() {
+        vmsByPriority = new int[vmSortedPriority.size()];
+        int maxVmId = -1;
+        int rank = 0;
+        for (int vmid : vmSortedPriority.keySet()) {
+            vmsByPriority[rank++] = vmid;
+            maxVmId = Math.max(maxVmId, vmid);
+        }
+
+        priorityRanks = new int[maxVmId + 1];
+        Arrays.fill(priorityRanks, -1);
+        availableVms.clear();
+        for (rank = 0; rank < vmsByPriority.length; rank++) {
+            int vmid = vmsByPriority[rank];
+            if (vmid < 0) {
+                continue;
+            }
+            priorityRanks[vmid] = rank;
+            setAvailable(vmid, vmStatesList.get(vmid) == VirtualMachineState.AVAILABLE);
         }
+    }
 
+    /**
+     * Marks a VM as available or busy.
+     *
+     * @param vmId the id of the VM.
+     * @param available whether the VM is available.
+     * @since 1.2
+     */
+    private void setAvailable(int vmId, boolean available) {
+        if (priorityRanks != null && vmId >= 0 && vmId < priorityRanks.length && priorityRanks[vmId] >= 0) {
+            availableVms.set(priorityRanks[vmId], available);
+        }
     }
 
     @Override
@@ -6,11 +6,9 @@
 package cloudreports.extensions.brokers;
 
 import cloudreports.enums.VirtualMachineState;
-import cloudreports.event.CloudSimEvent;
-import cloudreports.event.CloudSimEventListener;
-import cloudreports.event.CloudSimEvents;
-import java.util.Iterator;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Vm;
 
@@ -18,45 +16,68 @@ import org.cloudbus.cloudsim.Vm;
  *
  * @author AjinkyaWavare
  */
-public class ThrottledVmLoadBalancer extends Broker implements CloudSimEventListener {
+public class ThrottledVmLoadBalancer extends Broker implements BrokerListener {
 
     int currentDataCenterId;
+    /**
+     * Holds the ids of the VMs whose state is AVAILABLE
+     */
+    private BitSet availableVms;
+    /**
+     * The number of VMs of vmStatesList already copied to availableVms
+     */
+    private int knownVms;
 
     public ThrottledVmLoadBalancer(String name) throws Exception {
         super(name);
         this.currentDataCenterId = 0;
-        addCloudSimEventListener(this);
+        this.availableVms = new BitSet();
+        addBrokerListener(this);
     }
 
     @Override
     public int getNextAvailableVm() {
-        int vmId = -1;
-
-        if (vmStatesList.size() > 0) {
-            int temp;
-            for (Iterator<Integer> itr = vmStatesList.keySet().iterator(); itr.hasNext();) {
-                temp = itr.next();
-                VirtualMachineState state = vmStatesList.get(temp); 
-                if (state.equals(VirtualMachineState.AVAILABLE)) {
-                    vmId = temp;
-                    break;
+        //Copy the states of the VMs created since the last call
+        if (knownVms < vmStatesList.size()) {
+            synchronized (vmStatesList) {
+                for (Map.Entry<Integer, VirtualMachineState> entry : vmStatesList.entrySet()) {
+                    setAvailable(entry.getKey(), entry.getValue() == VirtualMachineState.AVAILABLE);
                 }
+                knownVms = vmStatesList.size();
             }
         }
 
+        int vmId = availableVms.nextSetBit(0);
+
         allocatedVm(vmId);
 
         return vmId;
 
     }
 
-    public void cloudSimEventFired(CloudSimEvent e) {
-        if (e.getId() == CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM) {
-            int vmId = (Integer) e.getParameter("vmId");
-            vmStatesList.put(vmId, VirtualMachineState.BUSY);
-        } else if (e.getId() == CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET) {
-            int vmId = (Integer) e.getParameter("vmId");
-            vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
+    public void onCloudletAllocated(int vmId) {
+        vmStatesList.put(vmId, VirtualMachineState.BUSY);
+        setAvailable(vmId, false);
+    }
+
+    public void onCloudletFinished(int vmId) {
+        vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
+        setAvailable(vmId, true);
+    }
+
+    public void onAllVmsCreated() {
+    }
+
+    /**
+     * Marks a VM as available or busy.
+     *
+     * @param vmId the id of the VM.
+     * @param available whether the VM is available.
+     * @since 1.2
+     */
+    private void setAvailable(int vmId, boolean available) {
+        if (vmId >= 0) {
+            availableVms.set(vmId, available);
         }
     }
 
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.brokers;
+
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap of virtual machine ids ordered by their number
+ * of active cloudlets.
+ * Virtual machines that have never received a cloudlet come first, then the
+ * ones with the fewest active cloudlets; ties are broken by the lowest id.
+ * The least loaded virtual machine is found in constant time and a count is
+ * updated in logarithmic time. Ids are used as indexes of primitive arrays,
+ * so they are expected to be small non-negative integers, as the ids of the
+ * virtual machines of a broker are.
+ *
+ * @see         ActiveVmLoadBalancer
+ * @since       1.2
+ */
+class VmLoadHeap {
+
+    /** The ids of the virtual machines, in heap order. */
+    private int[] heap = new int[16];
+
+    /** The number of virtual machines in the heap. */
+    private int size;
+
+    /** The position of each virtual machine in the heap plus one, by id;
+     *  0 if the virtual machine is not in the heap.
+     */
+    private int[] positions = new int[16];
+
+    /** The number of active cloudlets of each virtual machine, by id. */
+    private int[] counts = new int[16];
+
+    /** Indicates whether each virtual machine has ever received a cloudlet,
+     *  by id.
+     */
+    private boolean[] allocated = new boolean[16];
+
+    /**
+     * Gets the number of virtual machines in the heap.
+     *
+     * @return  the number of virtual machines.
+     * @since   1.2
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Indicates whether a virtual machine is in the heap.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @return          <code>true</code> if the virtual machine is in the
+     *                  heap; <code>false</code> otherwise.
+     * @since           1.2
+     */
+    boolean contains(int vmId) {
+        return vmId >= 0 && vmId < positions.length && positions[vmId] != 0;
+    }
+
+    /**
+     * Adds a virtual machine that has not received any cloudlet yet.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @since           1.2
+     */
+    void add(int vmId) {
+        if (vmId < 0 || contains(vmId)) return;
+
+        ensureCapacity(vmId);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = vmId;
+        positions[vmId] = size + 1;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Gets the least loaded virtual machine.
+     *
+     * @return  the id of the least loaded virtual machine, or -1 if the heap
+     *          is empty.
+     * @since   1.2
+     */
+    int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    /**
+     * Records a cloudlet allocated to a virtual machine, adding the virtual
+     * machine if it is not in the heap.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @since           1.2
+     */
+    void increment(int vmId) {
+        if (vmId < 0) return;
+
+        add(vmId);
+        allocated[vmId] = true;
+        counts[vmId]++;
+        siftDown(positions[vmId] - 1);
+    }
+
+    /**
+     * Records a cloudlet finished by a virtual machine. Virtual machines that
+     * have never received a cloudlet are not changed.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @since           1.2
+     */
+    void decrement(int vmId) {
+        if (!contains(vmId) || !allocated[vmId]) return;
+
+        counts[vmId]--;
+        siftUp(positions[vmId] - 1);
+    }
+
+    /**
+     * Grows the arrays indexed by id so they can hold a given id.
+     *
+     * @param   vmId    the id of a virtual machine.
+     * @since           1.2
+     */
+    private void ensureCapacity(int vmId) {
+        if (vmId < positions.length) return;
+
+        int length = Math.max(positions.length * 2, vmId + 1);
+        positions = Arrays.copyOf(positions, length);
+        counts = Arrays.copyOf(counts, length);
+        allocated = Arrays.copyOf(allocated, length);
+    }
+
+    /**
+     * Indicates whether a virtual machine comes before another one.
+     *
+     * @param   a   the id of a virtual machine.
+     * @param   b   the id of another virtual machine.
+     * @return      <code>true</code> if <code>a</code> is less loaded than
+     *              <code>b</code>; <code>false</code> otherwise.
+     * @since       1.2
+     */
+    private boolean less(int a, int b) {
+        if (allocated[a] != allocated[b]) return !allocated[a];
+        if (counts[a] != counts[b]) return counts[a] < counts[b];
+        return a < b;
+    }
+
+    /**
+     * Moves the virtual machine at a given position up to its place.
+     *
+     * @param   index   the position in the heap.
+     * @since           1.2
+     */
+    private void siftUp(int index) {
+        int vmId = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(vmId, heap[parent])) break;
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(vmId, index);
+    }
+
+    /**
+     * Moves the virtual machine at a given position down to its place.
+     *
+     * @param   index   the position in the heap.
+     * @since           1.2
+     */
+    private void siftDown(int index) {
+        int vmId = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && less(heap[child + 1], heap[child])) child++;
+            if (!less(heap[child], vmId)) break;
+            place(heap[child], index);
+            index = child;
+        }
+        place(vmId, index);
+    }
+
+    /**
+     * Puts a virtual machine at a given position of the heap.
+     *
+     * @param   vmId    the id of the virtual machine.
+     * @param   index   the position in the heap.
+     * @since           1.2
+     */
+    private void place(int vmId, int index) {
+        heap[index] = vmId;
+        positions[vmId] = index + 1;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+
+/**
+ * An index of the free MIPS and RAM of a list of hosts, kept as a tree of
+ * maximum values over ranges of the list.
+ * It finds the next host of the list that may fit a virtual machine in
+ * logarithmic time, skipping whole ranges of hosts that cannot fit it
+ * without touching their provisioners.
+ * <p>
+ * The index is rebuilt whenever the simulation clock advances or it is
+ * invalidated, and the entry of a host must be updated whenever virtual
+ * machines are allocated to or deallocated from it.
+ *
+ * @see         VmAllocationPolicySingleThreshold#findHostForVm(Vm)
+ * @since       1.2
+ */
+public class HostCapacityIndex {
+
+    /** The indexed hosts. */
+    private List<PowerHost> hostList;
+
+    /** The positions of the hosts in the list, by host id. */
+    private Map<Integer, Integer> positions;
+
+    /** The number of leaves of the tree, a power of two. */
+    private int leaves;
+
+    /** The maximum free MIPS of each node of the tree. */
+    private double[] freeMips;
+
+    /** The maximum free RAM of each node of the tree. */
+    private double[] freeRam;
+
+    /** The simulation time the index was built at. */
+    private double buildTime;
+
+    /** Indicates whether the index must be rebuilt before being used. */
+    private boolean invalid;
+
+    /**
+     * Creates an index for a list of hosts.
+     *
+     * @param   hostList    the list of hosts.
+     * @since               1.2
+     */
+    public HostCapacityIndex(List<PowerHost> hostList) {
+        this.hostList = hostList;
+        this.positions = new HashMap<Integer, Integer>();
+        for (int i = 0; i < hostList.size(); i++) {
+            positions.put(hostList.get(i).getId(), i);
+        }
+
+        leaves = 1;
+        while (leaves < hostList.size()) leaves *= 2;
+        freeMips = new double[2 * leaves];
+        freeRam = new double[2 * leaves];
+        invalid = true;
+    }
+
+    /**
+     * Invalidates the index, so it is rebuilt before its next use.
+     * It must be called whenever the resources allocated to virtual machines
+     * change without passing through the allocation policy, e.g. when hosts
+     * update the processing of their virtual machines.
+     *
+     * @since   1.2
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Updates the entry of a host after virtual machines have been allocated
+     * to or deallocated from it.
+     *
+     * @param   host    the host.
+     * @since           1.2
+     */
+    public void update(Host host) {
+        if (invalid) return;
+        Integer position = positions.get(host.getId());
+        if (position == null) return;
+
+        int node = leaves + position;
+        freeMips[node] = getFreeMips(hostList.get(position));
+        freeRam[node] = getFreeRam(hostList.get(position));
+        for (node /= 2; node > 0; node /= 2) {
+            freeMips[node] = Math.max(freeMips[2 * node], freeMips[2 * node + 1]);
+            freeRam[node] = Math.max(freeRam[2 * node], freeRam[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Gets the position of the next host of the list, starting from a given
+     * position, that has enough free MIPS and RAM for a virtual machine.
+     * Hosts that are skipped are guaranteed not to be suitable for the
+     * virtual machine; the returned host still has to be checked.
+     *
+     * @param   from    the position to start from.
+     * @param   vm      the virtual machine, which must not be allocated to
+     *                  any host.
+     * @return          the position of the next candidate host, or -1 if
+     *                  there is none.
+     * @since           1.2
+     */
+    public int nextCandidate(int from, Vm vm) {
+        if (invalid || buildTime != CloudSim.clock()) build();
+        if (from >= hostList.size()) return -1;
+        return find(1, 0, leaves - 1, from, vm.getCurrentRequestedTotalMips(), vm.getCurrentRequestedRam());
+    }
+
+    /**
+     * Searches the subtree of a node for the first leaf at or after a given
+     * position that has enough free resources.
+     *
+     * @param   node            the node.
+     * @param   low             the first position covered by the node.
+     * @param   high            the last position covered by the node.
+     * @param   from            the position to start from.
+     * @param   requiredMips    the required amount of MIPS.
+     * @param   requiredRam     the required amount of RAM.
+     * @return                  the position of the leaf, or -1 if there is
+     *                          none.
+     * @since                   1.2
+     */
+    private int find(int node, int low, int high, int from, double requiredMips, double requiredRam) {
+        if (high < from || freeMips[node] < requiredMips || freeRam[node] < requiredRam) {
+            return -1;
+        }
+        if (low == high) return low;
+
+        int middle = (low + high) / 2;
+        int position = find(2 * node, low, middle, from, requiredMips, requiredRam);
+        if (position != -1) return position;
+        return find(2 * node + 1, middle + 1, high, from, requiredMips, requiredRam);
+    }
+
+    /**
+     * Rebuilds the index from the current state of the hosts.
+     *
+     * @since   1.2
+     */
+    private void build() {
+        for (int i = 0; i < leaves; i++) {
+            if (i < hostList.size()) {
+                freeMips[leaves + i] = getFreeMips(hostList.get(i));
+                freeRam[leaves + i] = getFreeRam(hostList.get(i));
+            } else {
+                freeMips[leaves + i] = -1;
+                freeRam[leaves + i] = -1;
+            }
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            freeMips[node] = Math.max(freeMips[2 * node], freeMips[2 * node + 1]);
+            freeRam[node] = Math.max(freeRam[2 * node], freeRam[2 * node + 1]);
+        }
+        buildTime = CloudSim.clock();
+        invalid = false;
+    }
+
+    /**
+     * Gets the free MIPS of a host, as checked by
+     * {@link Host#isSuitableForVm(Vm)}.
+     *
+     * @param   host    the host.
+     * @return          the free MIPS of the host.
+     * @since           1.2
+     */
+    private static double getFreeMips(Host host) {
+        return host.getVmScheduler().getAvailableMips();
+    }
+
+    /**
+     * Gets the free RAM of a host.
+     * Only the simple RAM provisioner is known to refuse virtual machines
+     * that require more than the available RAM; hosts with other provisioners
+     * are never skipped because of RAM.
+     *
+     * @param   host    the host.
+     * @return          the free RAM of the host.
+     * @since           1.2
+     */
+    private static double getFreeRam(Host host) {
+        if (host.getRamProvisioner().getClass() != RamProvisionerSimple.class) {
+            return Double.MAX_VALUE;
+        }
+        return host.getRamProvisioner().getAvailableRam();
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+import cloudreports.business.SettingBusiness;
+import cloudreports.models.Migration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.VmAllocationPolicy;
+import org.cloudbus.cloudsim.power.PowerHost;
+
+/**
+ * Plans the migrations needed to distribute virtual machines of overused
+ * hosts and to empty hosts, so they can be turned off.
+ * The used CPU and RAM of the target hosts are computed once and kept in a
+ * primitive ledger indexed by the position of the host in the list of
+ * targets, and the hosts marked to be turned off are kept in a bit set
+ * indexed by host id. Strategies that choose target hosts by their free MIPS
+ * also keep the targets sorted by free MIPS.
+ * <p>
+ * The ledger is updated as migrations are planned for a source host. If
+ * the placement strategy keeps plans, the migrations that are kept, i.e. all
+ * distributing migrations and the migrations of successful consolidations,
+ * stay in the ledger, so later source hosts are planned against the targets
+ * as they will be after those migrations and a target is never booked twice.
+ * Hosts that send or receive a kept migration are not consolidated, so a
+ * host that is about to receive virtual machines is never emptied or
+ * turned off. The changes made for a consolidation that fails are rolled
+ * back.
+ * <p>
+ * Otherwise, the ledger is rolled back after every source host, so each
+ * source host is planned against the current state of the targets, exactly
+ * as {@link VmAllocationPolicySingleThreshold#getConsolidatingMigrationList(List, PowerHost, List, List, double)}
+ * always did.
+ *
+ * @see         VmAllocationPolicySingleThreshold#consolidateVms(List)
+ * @see         VmAllocationPolicySingleThreshold#distributeVms(List, List)
+ * @since       1.2
+ */
+public class MigrationPlanner {
+
+    /** The allocation policy the migrations are planned for. */
+    private VmAllocationPolicy vmAllocationPolicy;
+
+    /** The target hosts. */
+    private List<PowerHost> targetHosts;
+
+    /** The positions of the target hosts, by host id. */
+    private Map<Integer, Integer> positions;
+
+    /** The upper utilization threshold of the target hosts. */
+    private double upperUtilizationThreshold;
+
+    /** The strategy used to choose target hosts. */
+    private PlacementStrategy placementStrategy;
+
+    /** The used CPU of the target hosts, including kept migrations. */
+    private double[] baseCpu;
+
+    /** The used RAM of the target hosts, including kept migrations. */
+    private double[] baseRam;
+
+    /** The used CPU of the target hosts, including planned migrations. */
+    private double[] cpu;
+
+    /** The used RAM of the target hosts, including planned migrations. */
+    private double[] ram;
+
+    /**
+     * The MIPS of the target hosts that can still be used without reaching
+     * the threshold. The extra last position is used to search the index.
+     */
+    private double[] freeMips;
+
+    /** The positions of the target hosts sorted by free MIPS, if needed. */
+    private TreeSet<Integer> freeMipsIndex;
+
+    /** The positions of the ledger changed by the current planning. */
+    private int[] changedPositions;
+
+    /** The number of positions of the ledger changed by the current planning. */
+    private int changedCount;
+
+    /** The ids of the hosts marked to be turned off. */
+    private BitSet hostsToBeTurnedOff;
+
+    /** The ids of the hosts that send or receive a kept migration. */
+    private BitSet migratingHosts;
+
+    /**
+     * Creates a planner for a list of target hosts.
+     *
+     * @param   vmAllocationPolicy          the allocation policy the
+     *                                      migrations are planned for.
+     * @param   targetHosts                 the target hosts.
+     * @param   upperUtilizationThreshold   the upper utilization threshold.
+     * @param   placementStrategy           the strategy used to choose
+     *                                      target hosts.
+     * @since                               1.2
+     */
+    public MigrationPlanner(VmAllocationPolicy vmAllocationPolicy, List<PowerHost> targetHosts,
+                            double upperUtilizationThreshold, PlacementStrategy placementStrategy) {
+        this.vmAllocationPolicy = vmAllocationPolicy;
+        this.targetHosts = targetHosts;
+        this.upperUtilizationThreshold = upperUtilizationThreshold;
+        this.placementStrategy = placementStrategy;
+        this.positions = new HashMap<Integer, Integer>();
+        this.baseCpu = new double[targetHosts.size()];
+        this.baseRam = new double[targetHosts.size()];
+        for (int i = 0; i < targetHosts.size(); i++) {
+            positions.put(targetHosts.get(i).getId(), i);
+            baseCpu[i] = VmAllocationPolicySingleThreshold.getHostCpuUtilization(targetHosts.get(i));
+            baseRam[i] = VmAllocationPolicySingleThreshold.getHostRamUtilization(targetHosts.get(i));
+        }
+        this.cpu = baseCpu.clone();
+        this.ram = baseRam.clone();
+        this.changedPositions = new int[16];
+        this.hostsToBeTurnedOff = new BitSet();
+        this.migratingHosts = new BitSet();
+
+        if (placementStrategy.isIndexed()) {
+            freeMips = new double[targetHosts.size() + 1];
+            freeMipsIndex = new TreeSet<Integer>(new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int result = Double.compare(freeMips[a], freeMips[b]);
+                    return result != 0 ? result : a.compareTo(b);
+                }
+            });
+            for (int i = 0; i < targetHosts.size(); i++) {
+                freeMips[i] = getFreeMips(i);
+                freeMipsIndex.add(i);
+            }
+        }
+    }
+
+    /**
+     * Marks a host to be turned off, so it is no longer used as a target.
+     *
+     * @param   host    the host.
+     * @since           1.2
+     */
+    public void markToBeTurnedOff(PowerHost host) {
+        hostsToBeTurnedOff.set(host.getId());
+        Integer position = positions.get(host.getId());
+        if (freeMipsIndex != null && position != null) {
+            freeMipsIndex.remove(position);
+        }
+    }
+
+    /**
+     * Books the target hosts of migrations planned elsewhere, e.g. by a
+     * previous distribution, so they are taken into account by the next
+     * plans. It is meant for placement strategies that keep plans.
+     *
+     * @param   migrationList   the planned migrations.
+     * @since                   1.2
+     */
+    public void reserve(List<Migration> migrationList) {
+        for (Migration migration : migrationList) {
+            migratingHosts.set(migration.getSourceHost().getId());
+            migratingHosts.set(migration.getTargetHost().getId());
+            Integer position = positions.get(migration.getTargetHost().getId());
+            if (position != null) {
+                place(position, migration.getVm());
+            }
+        }
+        commit();
+    }
+
+    /**
+     * Plans the migration of virtual machines of an overused host until it
+     * is not overused anymore.
+     *
+     * @param   migrationList   the list the planned migrations are added to.
+     * @param   sourceHost      the overused host.
+     * @since                   1.2
+     */
+    public void distribute(List<Migration> migrationList, PowerHost sourceHost) {
+        double cpuUtilization = VmAllocationPolicySingleThreshold.getHostCpuUtilization(sourceHost);
+        double ramUtilization = VmAllocationPolicySingleThreshold.getHostRamUtilization(sourceHost);
+        boolean planned = false;
+
+        for (Vm vm : getVmsInPlacementOrder(sourceHost)) {
+            if (vm.isInMigration()) {
+                continue;
+            }
+
+            int position = findTarget(sourceHost, vm);
+            if (position != -1) {
+                place(position, vm);
+                planned = true;
+                ramUtilization -= vm.getRam();
+                cpuUtilization -= sourceHost.getTotalAllocatedMipsForVm(vm);
+                migrationList.add(createMigration(targetHosts.get(position), sourceHost, vm));
+
+                //If the source host is not overused anymore, so finish distribution.
+                if ((ramUtilization / sourceHost.getRam()) < upperUtilizationThreshold
+                        && (cpuUtilization / sourceHost.getTotalMips()) < upperUtilizationThreshold) {
+                    break;
+                }
+            }
+        }
+
+        if (placementStrategy.keepsPlans()) {
+            if (planned) migratingHosts.set(sourceHost.getId());
+            commit();
+        } else {
+            rollback();
+        }
+    }
+
+    /**
+     * Plans the migration of all virtual machines of a source host, so it
+     * can be turned off.
+     *
+     * @param   migrationList   the list the planned migrations are added to.
+     * @param   sourceHost      the host to be emptied.
+     * @return                  <code>true</code> if all virtual machines of
+     *                          the host could be migrated; <code>false</code>
+     *                          otherwise, or if the host sends or receives a
+     *                          kept migration, in which case no migration is
+     *                          added to the list.
+     * @since                   1.2
+     */
+    public boolean consolidate(List<Migration> migrationList, PowerHost sourceHost) {
+        if (migratingHosts.get(sourceHost.getId())) {
+            return false;
+        }
+
+        double cpuUtilization = VmAllocationPolicySingleThreshold.getHostCpuUtilization(sourceHost);
+        double ramUtilization = VmAllocationPolicySingleThreshold.getHostRamUtilization(sourceHost);
+        int firstMigration = migrationList.size();
+
+        for (Vm vm : getVmsInPlacementOrder(sourceHost)) {
+            if (vm.isInMigration()) {
+                continue;
+            }
+
+            int position = findTarget(sourceHost, vm);
+            if (position != -1) {
+                place(position, vm);
+                ramUtilization -= vm.getRam();
+                cpuUtilization -= sourceHost.getTotalAllocatedMipsForVm(vm);
+                migrationList.add(createMigration(targetHosts.get(position), sourceHost, vm));
+            }
+        }
+
+        //The consolidation will only occur if all vms have been migrated
+        if (ramUtilization > 0 || cpuUtilization > 0) {
+            rollback();
+            migrationList.subList(firstMigration, migrationList.size()).clear();
+            return false;
+        }
+
+        if (placementStrategy.keepsPlans()) {
+            migratingHosts.set(sourceHost.getId());
+            commit();
+        } else {
+            rollback();
+        }
+        return true;
+    }
+
+    /**
+     * Creates the registry of a planned migration.
+     *
+     * @param   targetHost  the target host.
+     * @param   sourceHost  the source host.
+     * @param   vm          the virtual machine.
+     * @return              the migration.
+     * @since               1.2
+     */
+    Migration createMigration(PowerHost targetHost, PowerHost sourceHost, Vm vm) {
+        return new Migration(vmAllocationPolicy, targetHost, sourceHost, vm, SettingBusiness.getCurrentSimulation());
+    }
+
+    /**
+     * Gets the virtual machines of a host in the order they must be placed.
+     *
+     * @param   sourceHost  the host.
+     * @return              the virtual machines of the host.
+     * @since               1.2
+     */
+    private List<Vm> getVmsInPlacementOrder(PowerHost sourceHost) {
+        List<Vm> vms = sourceHost.getVmList();
+        if (!placementStrategy.isDecreasing()) return vms;
+
+        vms = new ArrayList<Vm>(vms);
+        Collections.sort(vms, new Comparator<Vm>() {
+            @Override
+            public int compare(Vm a, Vm b) {
+                int result = Double.compare(b.getNumberOfPes() * b.getMips(), a.getNumberOfPes() * a.getMips());
+                return result != 0 ? result : b.getRam() - a.getRam();
+            }
+        });
+        return vms;
+    }
+
+    /**
+     * Finds the target host of a virtual machine, according to the
+     * placement strategy.
+     *
+     * @param   sourceHost  the host the virtual machine is currently on.
+     * @param   vm          the virtual machine.
+     * @return              the position of the target host, or -1 if no
+     *                      target host fits the virtual machine.
+     * @since               1.2
+     */
+    private int findTarget(PowerHost sourceHost, Vm vm) {
+        double vmTotalMips = vm.getNumberOfPes() * vm.getMips();
+
+        if (!placementStrategy.isIndexed()) {
+            for (int i = 0; i < targetHosts.size(); i++) {
+                if (fits(i, sourceHost, vmTotalMips, vm.getRam())) return i;
+            }
+            return -1;
+        }
+
+        Iterator<Integer> candidates;
+        if (placementStrategy == PlacementStrategy.BEST_FIT_DECREASING) {
+            //Search from the hosts with just enough free MIPS upwards
+            int probe = targetHosts.size();
+            freeMips[probe] = vmTotalMips;
+            candidates = freeMipsIndex.tailSet(probe, false).iterator();
+        } else {
+            candidates = freeMipsIndex.descendingIterator();
+        }
+        while (candidates.hasNext()) {
+            int i = candidates.next();
+            if (fits(i, sourceHost, vmTotalMips, vm.getRam())) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Indicates whether a target host can receive a virtual machine without
+     * reaching the threshold.
+     *
+     * @param   position    the position of the target host.
+     * @param   sourceHost  the host the virtual machine is currently on.
+     * @param   vmTotalMips the MIPS of the virtual machine.
+     * @param   vmRam       the RAM of the virtual machine.
+     * @return              <code>true</code> if the host can receive the
+     *                      virtual machine; <code>false</code> otherwise.
+     * @since               1.2
+     */
+    private boolean fits(int position, PowerHost sourceHost, double vmTotalMips, int vmRam) {
+        PowerHost targetHost = targetHosts.get(position);
+        if (targetHost.getId() == sourceHost.getId() || hostsToBeTurnedOff.get(targetHost.getId())) {
+            return false;
+        }
+        return (cpu[position] + vmTotalMips) / targetHost.getTotalMips() < upperUtilizationThreshold
+                && (ram[position] + vmRam) / targetHost.getRam() < upperUtilizationThreshold;
+    }
+
+    /**
+     * Adds the resources of a virtual machine to a target host in the ledger.
+     *
+     * @param   position    the position of the target host.
+     * @param   vm          the virtual machine.
+     * @since               1.2
+     */
+    private void place(int position, Vm vm) {
+        if (changedCount == changedPositions.length) {
+            changedPositions = Arrays.copyOf(changedPositions, 2 * changedCount);
+        }
+        changedPositions[changedCount++] = position;
+
+        boolean indexed = freeMipsIndex != null && freeMipsIndex.remove(position);
+        cpu[position] += vm.getNumberOfPes() * vm.getMips();
+        ram[position] += vm.getRam();
+        if (indexed) {
+            freeMips[position] = getFreeMips(position);
+            freeMipsIndex.add(position);
+        }
+    }
+
+    /**
+     * Keeps the changes made to the ledger by the current planning, marking
+     * the changed targets as receiving migrations.
+     *
+     * @since   1.2
+     */
+    private void commit() {
+        for (int i = 0; i < changedCount; i++) {
+            int position = changedPositions[i];
+            baseCpu[position] = cpu[position];
+            baseRam[position] = ram[position];
+            migratingHosts.set(targetHosts.get(position).getId());
+        }
+        changedCount = 0;
+    }
+
+    /**
+     * Restores the ledger to the state of the targets before the current
+     * planning.
+     *
+     * @since   1.2
+     */
+    private void rollback() {
+        for (int i = 0; i < changedCount; i++) {
+            int position = changedPositions[i];
+            boolean indexed = freeMipsIndex != null && freeMipsIndex.remove(position);
+            cpu[position] = baseCpu[position];
+            ram[position] = baseRam[position];
+            if (indexed) {
+                freeMips[position] = getFreeMips(position);
+                freeMipsIndex.add(position);
+            }
+        }
+        changedCount = 0;
+    }
+
+    /**
+     * Gets the MIPS of a target host that can still be used without reaching
+     * the threshold.
+     *
+     * @param   position    the position of the target host.
+     * @return              the free MIPS of the host.
+     * @since               1.2
+     */
+    private double getFreeMips(int position) {
+        return targetHosts.get(position).getTotalMips() * upperUtilizationThreshold - cpu[position];
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+/**
+ * Defines the strategies used to choose the target hosts of migrations
+ * planned by {@link VmAllocationPolicySingleThreshold}.
+ * In all strategies, a target host must stay under the upper utilization
+ * threshold after receiving a virtual machine.
+ * <p>
+ * {@link #FIRST_FIT} is the placement of the "Single threshold" policy and
+ * makes exactly the decisions it always made: each source host is planned
+ * against the current state of the targets and every examined source host
+ * is turned off. The other strategies keep the plans they make, so a target
+ * is never booked twice; see {@link #keepsPlans()}.
+ *
+ * @see         MigrationPlanner
+ * @see         cloudreports.enums.AllocationPolicy
+ * @since       1.2
+ */
+public enum PlacementStrategy {
+
+    /** Virtual machines are taken in the order of the host and each one goes
+     *  to the first target host, in list order, that fits it.
+     */
+    FIRST_FIT(false),
+
+    /** Virtual machines are taken in decreasing order of MIPS and each one
+     *  goes to the first target host, in list order, that fits it.
+     */
+    FIRST_FIT_DECREASING(true),
+
+    /** Virtual machines are taken in decreasing order of MIPS and each one
+     *  goes to the target host that fits it with the least free MIPS left.
+     */
+    BEST_FIT_DECREASING(true),
+
+    /** Virtual machines are taken in the order of the host and each one goes
+     *  to the target host with the most free MIPS.
+     */
+    WORST_FIT(false);
+
+    /** Indicates whether virtual machines are taken in decreasing order of MIPS. */
+    private boolean decreasing;
+
+    /**
+     * Creates a strategy.
+     *
+     * @param   decreasing  indicates whether virtual machines are taken in
+     *                      decreasing order of MIPS.
+     * @since               1.2
+     */
+    private PlacementStrategy(boolean decreasing) {
+        this.decreasing = decreasing;
+    }
+
+    /**
+     * Indicates whether virtual machines are taken in decreasing order of
+     * MIPS.
+     *
+     * @return  <code>true</code> if virtual machines are sorted before being
+     *          placed; <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean isDecreasing() {
+        return decreasing;
+    }
+
+    /**
+     * Indicates whether target hosts are chosen by their amount of free MIPS,
+     * in which case a sorted index of free MIPS is kept.
+     *
+     * @return  <code>true</code> if target hosts are chosen by free MIPS;
+     *          <code>false</code> if they are chosen in list order.
+     * @since   1.2
+     */
+    public boolean isIndexed() {
+        return this == BEST_FIT_DECREASING || this == WORST_FIT;
+    }
+
+    /**
+     * Indicates whether the migrations planned for a source host are kept in
+     * the resource ledger when the next source hosts are planned. If so, the
+     * hosts that send or receive a kept migration are not consolidated, and
+     * only the hosts that could be emptied are turned off.
+     *
+     * @return  <code>true</code> if plans are kept; <code>false</code> if
+     *          each source host is planned against the current state of the
+     *          targets.
+     * @since   1.2
+     */
+    public boolean keepsPlans() {
+        return this != FIRST_FIT;
+    }
+}
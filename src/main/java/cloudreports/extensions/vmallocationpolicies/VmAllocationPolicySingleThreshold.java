@@ -19,15 +19,14 @@
 
 package cloudreports.extensions.vmallocationpolicies;
 
-import cloudreports.business.SettingBusiness;
 import cloudreports.enums.AllocationPolicy;
 import cloudreports.models.Migration;
 import cloudreports.simulation.Simulation;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
+import org.cloudbus.cloudsim.Host;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmAllocationPolicySimple;
@@ -45,6 +44,12 @@ import org.cloudbus.cloudsim.power.PowerHost;
 public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple implements VmAllocationPolicyExtensible {
 
     private double upperUtilizationThreshold;
+
+    /** The strategy used to choose the target hosts of migrations. */
+    private PlacementStrategy placementStrategy;
+
+    /** The index of free resources of the hosts. */
+    private HostCapacityIndex hostCapacityIndex;
     
     /** 
      * Initializes a new instance of this class with the given list of hosts
@@ -55,8 +60,25 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
      * @since                           1.0
      */         
     public VmAllocationPolicySingleThreshold(List<? extends PowerHost> list, double utilizationThreshold) {
+        this(list, utilizationThreshold, PlacementStrategy.FIRST_FIT);
+    }
+
+    /** 
+     * Initializes a new instance of this class with the given list of hosts,
+     * utilization threshold value and strategy to choose the target hosts of
+     * migrations.
+     *
+     * @param   list                    the list of hosts.
+     * @param   utilizationThreshold    the utilization threshold value.
+     * @param   placementStrategy       the strategy to choose target hosts.
+     * @since                           1.2
+     */         
+    public VmAllocationPolicySingleThreshold(List<? extends PowerHost> list, double utilizationThreshold,
+                                             PlacementStrategy placementStrategy) {
         super(list);
         this.upperUtilizationThreshold = utilizationThreshold;
+        this.placementStrategy = placementStrategy;
+        this.hostCapacityIndex = new HostCapacityIndex(this.<PowerHost>getHostList());
     }
 
     /** 
@@ -99,8 +121,9 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
         if(!targetHosts.isEmpty()) {
             sortByPowerConsumption(overusedHosts);
             
+            MigrationPlanner planner = createPlanner(targetHosts, getUpperUtilizationThreshold());
             for(PowerHost host : overusedHosts) {
-                getDistributingMigrationList(migrationList, host, targetHosts, getUpperUtilizationThreshold());
+                planner.distribute(migrationList, host);
             }
             
             for(Migration migration : migrationList) {
@@ -120,13 +143,15 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
         List<PowerHost> targetHosts = activeHosts;
         
         List<PowerHost> sourceHosts = activeHosts;
-        List<Integer> hostsToBeTurnedOffIds = new ArrayList<Integer>();
+        MigrationPlanner planner = createPlanner(targetHosts, getUpperUtilizationThreshold());
+        boolean keepsPlans = getPlacementStrategy().keepsPlans();
+        if (keepsPlans) planner.reserve(migrationList);
         
         for (PowerHost sourceHost : sourceHosts) {
-            List<Migration> newMigrationList = new ArrayList<Migration>();
-            getConsolidatingMigrationList(newMigrationList, sourceHost, targetHosts, hostsToBeTurnedOffIds, getUpperUtilizationThreshold());
-            migrationList.addAll(newMigrationList);
-            hostsToBeTurnedOffIds.add(sourceHost.getId());
+            //Without kept plans, every examined host is marked, as it always was
+            if (planner.consolidate(migrationList, sourceHost) || !keepsPlans) {
+                planner.markToBeTurnedOff(sourceHost);
+            }
         }
         
         for (Migration migration : migrationList) {
@@ -140,6 +165,39 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
         return this.upperUtilizationThreshold;
     }
 
+    /** 
+     * Gets the strategy used to choose the target hosts of migrations.
+     *
+     * @return  the placement strategy.
+     * @since   1.2
+     */
+    public PlacementStrategy getPlacementStrategy() {
+        return this.placementStrategy;
+    }
+
+    /** 
+     * Creates a planner of the migrations of this policy.
+     *
+     * @param   targetHosts                 the target hosts.
+     * @param   upperUtilizationThreshold   the upper utilization threshold.
+     * @return                              the planner.
+     * @since                               1.2
+     */
+    MigrationPlanner createPlanner(List<PowerHost> targetHosts, double upperUtilizationThreshold) {
+        return new MigrationPlanner(this, targetHosts, upperUtilizationThreshold, getPlacementStrategy());
+    }
+
+    /** 
+     * Invalidates the index of free resources of the hosts. It must be called
+     * whenever hosts update the processing of their virtual machines, since
+     * the MIPS allocated to them may change.
+     *
+     * @since   1.2
+     */
+    public void invalidateHostCapacityIndex() {
+        hostCapacityIndex.invalidate();
+    }
+
     /** 
      * Gets a list of overused hosts.
      *
@@ -212,6 +270,7 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
         PowerHost allocatedHost = findHostForVm(vm);
         if (allocatedHost != null && allocatedHost.vmCreate(vm)) { //if vm has been succesfully created in the host
             getVmTable().put(vm.getUid(), allocatedHost);
+            hostCapacityIndex.update(allocatedHost);
             if (!Log.isDisabled()) {
                 Log.print(String.format("%.2f: VM #" + vm.getId() + " has been allocated to the host #" + allocatedHost.getId() + "\n", CloudSim.clock()));
             }
@@ -220,8 +279,27 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
         return false;
     }
 
+    /**
+     * Allocates a given host for a given VM.
+     *
+     * @param vm a virtual machine.
+     * @param host the host.
+     *
+     * @return      <code>true</code> if the host could be allocated;
+     * <code>false</code> otherwise.
+     */
+    @Override
+    public boolean allocateHostForVm(Vm vm, Host host) {
+        boolean result = super.allocateHostForVm(vm, host);
+        hostCapacityIndex.update(host);
+        return result;
+    }
+
     /**
      * Finds a host to allocate for the VM.
+     * Hosts that do not have enough free MIPS or RAM for the VM are skipped
+     * through the host capacity index, and PEs are only tentatively allocated
+     * on hosts that would improve the current choice.
      *
      * @param vm the virtual machine to be allocated.
      * @return the chosen host.
@@ -229,23 +307,40 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
     public PowerHost findHostForVm(Vm vm) {
         double minPower = Double.MAX_VALUE;
         PowerHost allocatedHost = null;
+        List<PowerHost> hostList = this.<PowerHost>getHostList();
+
+        //The index disregards the resources a vm may already hold on its host
+        boolean useIndex = vm.getHost() == null;
+        int position = useIndex ? hostCapacityIndex.nextCandidate(0, vm) : 0;
+        while (position != -1 && position < hostList.size()) {
+            PowerHost host = hostList.get(position);
+            position = useIndex ? hostCapacityIndex.nextCandidate(position + 1, vm) : position + 1;
 
-        for (PowerHost host : this.<PowerHost>getHostList()) {
             if (host.isSuitableForVm(vm)) {
-                double maxUtilization = getMaxUtilizationAfterAllocation(host, vm);
-                if ((!vm.isBeingInstantiated() && maxUtilization > getUpperUtilizationThreshold()) || (vm.isBeingInstantiated() && maxUtilization > 1.0)) {
-                    continue;
-                }
+                double powerDiff;
                 try {
                     double powerAfterAllocation = getPowerAfterAllocation(host, vm);
-                    if (powerAfterAllocation != -1) {
-                        double powerDiff = powerAfterAllocation - host.getPower();
-                        if (powerDiff < minPower) {
-                            minPower = powerDiff;
-                            allocatedHost = host;
-                        }
+                    if (powerAfterAllocation == -1) {
+                        continue;
                     }
+                    powerDiff = powerAfterAllocation - host.getPower();
                 } catch (Exception e) {
+                    continue;
+                }
+                if (!(powerDiff < minPower)) {
+                    continue;
+                }
+
+                double maxUtilization = getMaxUtilizationAfterAllocation(host, vm);
+                if (maxUtilization == -1 || (!vm.isBeingInstantiated() && maxUtilization > getUpperUtilizationThreshold()) || (vm.isBeingInstantiated() && maxUtilization > 1.0)) {
+                    continue;
+                }
+                minPower = powerDiff;
+                allocatedHost = host;
+
+                //Power never decreases with utilization, so no other host can do better
+                if (minPower <= 0) {
+                    break;
                 }
             }
         }
@@ -255,32 +350,16 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
 
     /**
      * Gets the power after allocation.
+     * The power of a host is computed from the CPU utilization recorded at
+     * its last processing update, which is not changed by allocating PEs, so
+     * it is obtained analytically instead of tentatively allocating them.
      *
      * @param host the host.
      * @param vm the virtual machine.
      * @return the power usage after allocation of the virtual machine.
      */
     protected double getPowerAfterAllocation(PowerHost host, Vm vm) {
-        List<Double> allocatedMipsForVm = null;
-        PowerHost allocatedHost = (PowerHost) vm.getHost();
-
-        if (allocatedHost != null) {
-            allocatedMipsForVm = allocatedHost.getAllocatedMipsForVm(vm);
-        }
-
-        if (!host.allocatePesForVm(vm, vm.getCurrentRequestedMips())) {
-            return -1;
-        }
-
-        double power = host.getPower();
-
-        host.deallocatePesForVm(vm);
-
-        if (allocatedHost != null && allocatedMipsForVm != null) {
-            vm.getHost().allocatePesForVm(vm, allocatedMipsForVm);
-        }
-
-        return power;
+        return host.getPower();
     }
 
     /**
@@ -324,6 +403,7 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
             PowerHost host = (PowerHost) getVmTable().remove(vm.getUid());
             if (host != null) {
                 host.vmDestroy(vm);
+                hostCapacityIndex.update(host);
             }
         }
     }
@@ -357,54 +437,8 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
      * @since 1.0
      */
     protected void getDistributingMigrationList(List<Migration> migrationList, PowerHost sourceHost, List<PowerHost> targetHosts, double upperUtilizationThreshold) {
-        //Map of used resources on target hosts
-        //Keys: the target hosts IDs
-        //Values: a list with the amount of used CPU and RAM on the target host
-        HashMap<Integer, List<Double>> resourcesMap = new HashMap<Integer, List<Double>>();
-        for (PowerHost host : targetHosts) {
-            List<Double> resourcesList = new ArrayList<Double>();
-            resourcesList.add(getHostCpuUtilization(host));
-            resourcesList.add(getHostRamUtilization(host));
-            resourcesMap.put(host.getId(), resourcesList);
-        }
-
-        double cpuUtilization = getHostCpuUtilization(sourceHost);
-        double ramUtilization = getHostRamUtilization(sourceHost);
-        int currentSimulation = SettingBusiness.getCurrentSimulation();
-
-        VMS_LOOP:
-        for (Vm vm : sourceHost.getVmList()) {
-            if (vm.isInMigration()) {
-                continue;
-            }
-
-            HOSTS_LOOP:
-            for (PowerHost targetHost : targetHosts) {
-                List<Double> hostResources = resourcesMap.get(targetHost.getId());
-                double vmTotalMips = vm.getNumberOfPes() * vm.getMips();
-                if ((hostResources.get(0) + vmTotalMips) / targetHost.getTotalMips() < upperUtilizationThreshold
-                        && (hostResources.get(1) + vm.getRam()) / targetHost.getRam() < upperUtilizationThreshold) {
-                    //There's enough resources and no threshold violation, so add the migration to the list.
-                    //Step 1: add the resources utilization of the target host
-                    hostResources.set(0, hostResources.get(0) + vmTotalMips);
-                    hostResources.set(1, hostResources.get(1) + vm.getRam());
-                    //Step 2: subtract the utilization of the source host
-                    ramUtilization -= vm.getRam();
-                    cpuUtilization -= sourceHost.getTotalAllocatedMipsForVm(vm);
-                    //Step 3: add the entry on the migration map
-                    Migration migration = new Migration(this, targetHost, sourceHost, vm, currentSimulation);
-                    migrationList.add(migration);
-
-                    //If the source host is not overused anymore, so finish distribution.
-                    if ((ramUtilization / sourceHost.getRam()) < upperUtilizationThreshold
-                            && (cpuUtilization / sourceHost.getTotalMips()) < upperUtilizationThreshold) {
-                        break VMS_LOOP;
-                    } else {
-                        break HOSTS_LOOP;
-                    }
-                }
-            }
-        }
+        MigrationPlanner planner = createPlanner(targetHosts, upperUtilizationThreshold);
+        planner.distribute(migrationList, sourceHost);
     }
 
     /**
@@ -424,60 +458,15 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
             List<PowerHost> targetHosts,
             List<Integer> hostsToBeTurnedOffIds,
             double upperUtilizationThreshold) {
-        //Map of resources
-        //Keys: each one of the target hosts ID
-        //Values: a list with the amount of available CPU and RAM of the host
-        HashMap<Integer, List<Double>> resourcesMap = new HashMap<Integer, List<Double>>();
+        MigrationPlanner planner = createPlanner(targetHosts, upperUtilizationThreshold);
         for (PowerHost host : targetHosts) {
-            List<Double> resourcesList = new ArrayList<Double>();
-            resourcesList.add(getHostCpuUtilization(host));
-            resourcesList.add(getHostRamUtilization(host));
-            resourcesMap.put(host.getId(), resourcesList);
-        }
-
-        double cpuUtilization = getHostCpuUtilization(sourceHost);
-        double ramUtilization = getHostRamUtilization(sourceHost);
-        int currentSimulation = SettingBusiness.getCurrentSimulation();
-
-        for (Vm vm : sourceHost.getVmList()) {
-            if (vm.isInMigration()) {
-                continue;
-            }
-
-            HOSTS_LOOP:
-            for (PowerHost targetHost : targetHosts) {
-                if (targetHost.getId() == sourceHost.getId()) {
-                    continue HOSTS_LOOP;
-                }
-
-                for (int id : hostsToBeTurnedOffIds) {
-                    if (targetHost.getId() == id) {
-                        continue HOSTS_LOOP;
-                    }
-                }
-
-                List<Double> hostResources = resourcesMap.get(targetHost.getId());
-                double vmTotalMips = vm.getNumberOfPes() * vm.getMips();
-                if ((hostResources.get(0) + vmTotalMips) / targetHost.getTotalMips() < upperUtilizationThreshold
-                        && (hostResources.get(1) + vm.getRam()) / targetHost.getRam() < upperUtilizationThreshold) {
-                    //There's enough resources and no threshold violation, so add the migration to the list.
-                    //Step 1: subtract the resources of the target host
-                    hostResources.set(0, hostResources.get(0) + vmTotalMips);
-                    hostResources.set(1, hostResources.get(1) + vm.getRam());
-                    //Step 2: subtract the utilization of the source host
-                    ramUtilization -= vm.getRam();
-                    cpuUtilization -= sourceHost.getTotalAllocatedMipsForVm(vm);
-                    //Step 3: add the entry to the migration map
-                    Migration migration = new Migration(this, targetHost, sourceHost, vm, currentSimulation);
-                    migrationList.add(migration);
-
-                    break HOSTS_LOOP;
-                }
+            if (hostsToBeTurnedOffIds.contains(host.getId())) {
+                planner.markToBeTurnedOff(host);
             }
         }
 
         //The consolidation will only occur if all vms have been migrated
-        if (ramUtilization > 0 || cpuUtilization > 0) {
+        if (!planner.consolidate(migrationList, sourceHost)) {
             migrationList.clear();
         }
     }
@@ -542,14 +531,7 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
      */
     public static double getHostCpuUtilizationRate(PowerHost host) {
         double cpuUtilizationRate = getHostCpuUtilization(host) / host.getTotalMips();
-
-        List<Double> previousValuesCpu = Simulation.getDataCollector().getMonitoredUsedResources(host.getDatacenter().getName(), host.getId(), "CPU");
-        for (Double previousValue : previousValuesCpu) {
-            cpuUtilizationRate += (previousValue / 100);
-        }
-        cpuUtilizationRate /= (previousValuesCpu.size() + 1);
-
-        return cpuUtilizationRate;
+        return Simulation.getHostUtilizationMonitor().getCpuUtilizationRate(host, cpuUtilizationRate);
     }
 
     /**
@@ -560,14 +542,7 @@ public class VmAllocationPolicySingleThreshold extends VmAllocationPolicySimple
      */
     public static double getHostRamUtilizationRate(PowerHost host) {
         double ramUtilizationRate = getHostRamUtilization(host) / host.getRam();
-
-        List<Double> previousValuesRam = Simulation.getDataCollector().getMonitoredUsedResources(host.getDatacenter().getName(), host.getId(), "RAM");
-        for (Double previousValue : previousValuesRam) {
-            ramUtilizationRate += (previousValue / 100);
-        }
-        ramUtilizationRate /= (previousValuesRam.size() + 1);
-
-        return ramUtilizationRate;
+        return Simulation.getHostUtilizationMonitor().getRamUtilizationRate(host, ramUtilizationRate);
     }
 
 }
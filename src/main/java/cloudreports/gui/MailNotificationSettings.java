@@ -239,12 +239,14 @@ public class MailNotificationSettings extends javax.swing.JDialog {
             Setting isMailNotificationEnabled = sDAO.getSetting("EnableMailNotification");
             isMailNotificationEnabled.setValue("true");
             sDAO.updateSetting(isMailNotificationEnabled);
+            SettingBusiness.invalidateSnapshot();
             setMailSettingsEnabled(true);
         }
         else {
             Setting isMailNotificationEnabled = sDAO.getSetting("EnableMailNotification");
             isMailNotificationEnabled.setValue("false");
             sDAO.updateSetting(isMailNotificationEnabled);
+            SettingBusiness.invalidateSnapshot();
             setMailSettingsEnabled(false);
         }
     }//GEN-LAST:event_enableCheckBoxActionPerformed
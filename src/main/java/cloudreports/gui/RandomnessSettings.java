@@ -213,6 +213,7 @@ public class RandomnessSettings extends javax.swing.JDialog {
         Setting randomnessSource = sDAO.getSetting("Randomness");
         randomnessSource.setValue("1");
         this.sDAO.updateSetting(randomnessSource);
+        SettingBusiness.invalidateSnapshot();
         setQRBGSettingsEnabled(true);
     }//GEN-LAST:event_QRBGRadioButtonActionPerformed
 
@@ -227,6 +228,7 @@ public class RandomnessSettings extends javax.swing.JDialog {
         Setting randomnessSource = sDAO.getSetting("Randomness");
         randomnessSource.setValue("0");
         this.sDAO.updateSetting(randomnessSource);
+        SettingBusiness.invalidateSnapshot();
         setQRBGSettingsEnabled(false);
     }//GEN-LAST:event_JavaRadioButtonActionPerformed
 
@@ -47,6 +47,8 @@ public class SimulationSettings extends javax.swing.JDialog {
         htmlReportsCheckBoxStateChanged(null);
         rawDataReportsCheckBox.setSelected(SettingBusiness.isRawDataReportsEnabled());
         rawDataReportsCheckBoxStateChanged(null);
+        columnarMetricsCheckBox.setSelected(SettingBusiness.isColumnarMetricsEnabled());
+        steadyStateWorkloadCheckBox.setSelected(SettingBusiness.isSteadyStateWorkloadEnabled());
     }
 
     /** This method is called from within the constructor to
@@ -66,6 +68,9 @@ public class SimulationSettings extends javax.swing.JDialog {
         minutesLabel = new javax.swing.JLabel();
         htmlReportsCheckBox = new javax.swing.JCheckBox();
         rawDataReportsCheckBox = new javax.swing.JCheckBox();
+        columnarMetricsCheckBox = new javax.swing.JCheckBox();
+        steadyStateWorkloadCheckBox = new javax.swing.JCheckBox();
+        steadyStateWorkloadNoteLabel = new javax.swing.JLabel();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         setTitle("Simulation settings");
@@ -108,6 +113,12 @@ public class SimulationSettings extends javax.swing.JDialog {
             }
         });
 
+        columnarMetricsCheckBox.setText("Store metrics in columnar files.");
+
+        steadyStateWorkloadCheckBox.setText("Keep only statistics of finished cloudlets (steady-state workload).");
+
+        steadyStateWorkloadNoteLabel.setText("Per-cloudlet report sections stay empty; a summary per broker is written to the log.");
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -131,7 +142,12 @@ public class SimulationSettings extends javax.swing.JDialog {
                                         .addGap(4, 4, 4)
                                         .addComponent(minutesLabel))))
                             .addComponent(htmlReportsCheckBox)
-                            .addComponent(rawDataReportsCheckBox)))
+                            .addComponent(rawDataReportsCheckBox)
+                            .addComponent(columnarMetricsCheckBox)
+                            .addComponent(steadyStateWorkloadCheckBox)
+                            .addGroup(layout.createSequentialGroup()
+                                .addGap(21, 21, 21)
+                                .addComponent(steadyStateWorkloadNoteLabel))))
                     .addComponent(okButton, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.PREFERRED_SIZE, 81, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addContainerGap())
         );
@@ -154,6 +170,11 @@ public class SimulationSettings extends javax.swing.JDialog {
                 .addComponent(htmlReportsCheckBox)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(rawDataReportsCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(columnarMetricsCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(steadyStateWorkloadCheckBox)
+                .addComponent(steadyStateWorkloadNoteLabel)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addComponent(okButton)
                 .addContainerGap())
@@ -187,6 +208,15 @@ public class SimulationSettings extends javax.swing.JDialog {
         rawDataReportsEnabled.setValue(String.valueOf(rawDataReportsCheckBox.isSelected()));
         sDAO.updateSetting(rawDataReportsEnabled);
         
+        Setting columnarMetricsEnabled = sDAO.getSetting("ColumnarMetrics");
+        columnarMetricsEnabled.setValue(String.valueOf(columnarMetricsCheckBox.isSelected()));
+        sDAO.updateSetting(columnarMetricsEnabled);
+        
+        Setting steadyStateWorkloadEnabled = sDAO.getSetting("SteadyStateWorkload");
+        steadyStateWorkloadEnabled.setValue(String.valueOf(steadyStateWorkloadCheckBox.isSelected()));
+        sDAO.updateSetting(steadyStateWorkloadEnabled);
+        SettingBusiness.invalidateSnapshot();
+        
         this.dispose();
     }//GEN-LAST:event_okButtonActionPerformed
 
@@ -236,12 +266,15 @@ public class SimulationSettings extends javax.swing.JDialog {
     }//GEN-LAST:event_numOfSimulationsSpinnerStateChanged
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JCheckBox columnarMetricsCheckBox;
     private javax.swing.JCheckBox htmlReportsCheckBox;
     private javax.swing.JLabel minutesLabel;
     private javax.swing.JLabel numOfSimulationsLabel;
     private javax.swing.JSpinner numOfSimulationsSpinner;
     private javax.swing.JButton okButton;
     private javax.swing.JCheckBox rawDataReportsCheckBox;
+    private javax.swing.JCheckBox steadyStateWorkloadCheckBox;
+    private javax.swing.JLabel steadyStateWorkloadNoteLabel;
     private javax.swing.JLabel timeToSimulateLabel;
     private javax.swing.JSpinner timeToSimulateSpinner;
     // End of variables declaration//GEN-END:variables
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.gui;
+
+import cloudreports.simulation.SimulationMonitor;
+import cloudreports.utils.ElapsedTime;
+
+/**
+ * A {@link SimulationMonitor} that reports progress on the
+ * {@link SimulationView} and shows messages through dialogs.
+ *
+ * @see         SimulationView
+ * @since       1.2
+ */
+public class SimulationViewMonitor implements SimulationMonitor {
+
+    @Override
+    public void simulationsStarted() {
+        MainView.setStartButtonEnabled(false);
+        MainView.getSimulationView().setStateToInProgress();
+    }
+
+    @Override
+    public void progressChanged(String message) {
+        MainView.getSimulationView().setBarLabel(message);
+    }
+
+    @Override
+    public void simulationsCompleted(ElapsedTime elapsedTime) {
+        MainView.getSimulationView().setStateToComplete(elapsedTime);
+        MainView.setStartButtonEnabled(true);
+    }
+
+    @Override
+    public void simulationAborted() {
+        MainView.getSimulationView().dispose();
+    }
+
+    @Override
+    public void showErrorMessage(String message) {
+        Dialog.showErrorMessage(null, message);
+    }
+
+    @Override
+    public void showWarning(String message) {
+        Dialog.showWarning(MainView.getFrames()[0], message);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+import cloudreports.database.HibernateUtil;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command line entry point of CloudReports.
+ * It runs the simulations of a list of environments without initializing
+ * the graphical user interface and reports progress on the standard output.
+ * Environments are read from the db directory of the working directory, just
+ * like the graphical interface does.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp CloudReports.jar cloudreports.simulation.BatchSimulation [-workers &lt;n&gt;] [-seed &lt;seed&gt;] &lt;environment&gt;[:&lt;repetitions&gt;] ...
+ * </pre>
+ * When the number of repetitions of an environment is omitted, its
+ * NumberOfSimulations setting is used. When more than one worker is
+ * requested, repetitions are run concurrently by a {@link ParallelSimulation},
+ * which also simulates all the given environments at the same time.
+ * A seed makes the simulations reproducible; parallel simulations always use
+ * one and print it when it has not been given.
+ *
+ * @see         Simulation
+ * @see         ParallelSimulation
+ * @see         ConsoleSimulationMonitor
+ * @since       1.2
+ */
+public class BatchSimulation {
+
+    /**
+     * Runs the simulations of the environments given as arguments.
+     *
+     * @param   args    the options followed by the environments to be
+     *                  simulated, each one optionally followed by a colon and
+     *                  its number of repetitions.
+     * @since           1.2
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int numberOfWorkers = 1;
+        Long seed = null;
+        int repetition = 0;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-"); i += 2) {
+                if (i + 1 >= args.length) {
+                    printUsage();
+                    System.exit(2);
+                }
+                if (args[i].equals("-workers")) {
+                    numberOfWorkers = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("-seed")) {
+                    seed = Long.parseLong(args[i + 1]);
+                } else if (args[i].equals("-repetition")) {
+                    repetition = Integer.parseInt(args[i + 1]);
+                } else {
+                    printUsage();
+                    System.exit(2);
+                }
+            }
+        } catch (NumberFormatException e) {
+            printUsage();
+            System.exit(2);
+        }
+
+        if (i >= args.length || numberOfWorkers < 1) {
+            printUsage();
+            System.exit(2);
+        }
+
+        List<String> environmentsNames = new ArrayList<String>();
+        List<Integer> repetitions = new ArrayList<Integer>();
+        for (; i < args.length; i++) {
+            String arg = args[i];
+            String name = arg;
+            int numberOfSimulations = 0;
+            int separator = arg.lastIndexOf(':');
+            if (separator > 0) {
+                boolean hasRepetitions = true;
+                try {
+                    numberOfSimulations = Integer.parseInt(arg.substring(separator + 1));
+                    name = arg.substring(0, separator);
+                } catch (NumberFormatException e) {
+                    numberOfSimulations = 0;
+                    hasRepetitions = false;
+                }
+                if (hasRepetitions && numberOfSimulations < 1) {
+                    System.err.println("ERROR: the number of repetitions of \"" + name + "\" must be positive.");
+                    printUsage();
+                    System.exit(2);
+                }
+            }
+            if (name.endsWith(".cre")) {
+                name = name.substring(0, name.length() - ".cre".length());
+            }
+
+            if (!new File("db", name + ".cre").isFile()) {
+                System.err.println("ERROR: environment \"" + name + "\" was not found in the db directory.");
+                System.exit(2);
+            }
+
+            environmentsNames.add(name);
+            repetitions.add(numberOfSimulations);
+        }
+
+        HibernateUtil.setActiveDatabase(environmentsNames.get(0) + ".cre");
+        ConsoleSimulationMonitor monitor = new ConsoleSimulationMonitor();
+
+        if (numberOfWorkers > 1 && repetition == 0) {
+            if (seed == null) {
+                seed = System.nanoTime();
+                System.out.println("Using seed " + seed + ".");
+            }
+            ParallelSimulation simulation = new ParallelSimulation(environmentsNames.toArray(new String[0]), monitor,
+                    numberOfWorkers, seed);
+            for (int j = 0; j < environmentsNames.size(); j++) {
+                if (repetitions.get(j) > 0) {
+                    simulation.setNumberOfSimulations(environmentsNames.get(j), repetitions.get(j));
+                }
+            }
+            simulation.run();
+            System.exit(monitor.hasFailed() ? 1 : 0);
+        }
+
+        Simulation simulation = new Simulation(environmentsNames.toArray(new String[0]), monitor);
+        if (seed != null) simulation.setSeed(seed);
+        if (repetition > 0) {
+            // Worker mode: run only the given repetition of the environments.
+            for (String name : environmentsNames) {
+                simulation.setNumberOfSimulations(name, repetition);
+            }
+            simulation.setFirstSimulation(repetition);
+            simulation.setRemovePreviousReports(false);
+        } else {
+            for (int j = 0; j < environmentsNames.size(); j++) {
+                if (repetitions.get(j) > 0) {
+                    simulation.setNumberOfSimulations(environmentsNames.get(j), repetitions.get(j));
+                }
+            }
+        }
+
+        simulation.run();
+        System.exit(monitor.hasFailed() ? 1 : 0);
+    }
+
+    /**
+     * Prints the usage of the command line entry point.
+     *
+     * @since   1.2
+     */
+    private static void printUsage() {
+        System.err.println("Usage: java -cp CloudReports.jar " + BatchSimulation.class.getName()
+                + " [-workers <n>] [-seed <seed>] <environment>[:<repetitions>] ...");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+import cloudreports.utils.ElapsedTime;
+import java.io.PrintStream;
+
+/**
+ * A {@link SimulationMonitor} that writes progress to the standard output
+ * and messages to the standard error stream.
+ * It does not use any AWT or Swing component.
+ *
+ * @see         BatchSimulation
+ * @since       1.2
+ */
+public class ConsoleSimulationMonitor implements SimulationMonitor {
+
+    /** The stream progress is written to. */
+    private PrintStream out;
+
+    /** The stream errors and warnings are written to. */
+    private PrintStream err;
+
+    /** Indicates whether any simulation has failed or been aborted. */
+    private volatile boolean failed;
+
+    /**
+     * Creates a monitor that writes to the standard streams.
+     *
+     * @since   1.2
+     */
+    public ConsoleSimulationMonitor() {
+        this(System.out, System.err);
+    }
+
+    /**
+     * Creates a monitor that writes to the given streams.
+     *
+     * @param   out     the stream progress is written to.
+     * @param   err     the stream errors and warnings are written to.
+     * @since           1.2
+     */
+    public ConsoleSimulationMonitor(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    @Override
+    public void simulationsStarted() {
+        out.println("Simulation is in progress...");
+    }
+
+    @Override
+    public void progressChanged(String message) {
+        out.println(message);
+    }
+
+    @Override
+    public void simulationsCompleted(ElapsedTime elapsedTime) {
+        out.println("Simulations have completed in " + elapsedTime.toString() + ".");
+    }
+
+    @Override
+    public void simulationAborted() {
+        failed = true;
+    }
+
+    @Override
+    public void showErrorMessage(String message) {
+        failed = true;
+        err.println("ERROR: " + message.replace('\n', ' '));
+    }
+
+    @Override
+    public void showWarning(String message) {
+        err.println("WARNING: " + message.replace('\n', ' '));
+    }
+
+    /**
+     * Indicates whether any simulation has failed or been aborted.
+     *
+     * @return  <code>true</code> if any error has been reported;
+     *          <code>false</code> otherwise.
+     * @since   1.2
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+/**
+ * Signals that a simulation entity could not be created, e.g. because one of
+ * its components could not be loaded.
+ * Its message is meant to be shown to the user. Entities are created by
+ * worker threads, so the message is reported by the thread that waits for
+ * them instead of the thread that failed.
+ *
+ * @see         EntityFactory
+ * @since       1.2
+ */
+class EntityCreationException extends Exception {
+
+    /**
+     * Creates an exception with a message to be shown to the user.
+     *
+     * @param   message     the message.
+     * @since               1.2
+     */
+    EntityCreationException(String message) {
+        super(message);
+    }
+}
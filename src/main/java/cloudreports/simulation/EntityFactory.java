@@ -19,30 +19,26 @@
 
 package cloudreports.simulation;
 
-import cloudreports.business.CustomerRegistryBusiness;
-import cloudreports.business.DatacenterRegistryBusiness;
-import cloudreports.dao.CustomerRegistryDAO;
-import cloudreports.dao.DatacenterRegistryDAO;
-import cloudreports.dao.NetworkMapEntryDAO;
 import cloudreports.enums.AllocationPolicy;
 import cloudreports.enums.BrokerPolicy;
 import cloudreports.extensions.PowerDatacenter;
-import cloudreports.gui.Dialog;
 import cloudreports.models.*;
 import cloudreports.utils.RandomNumberGenerator;
+import cloudreports.utils.RandomStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.cloudbus.cloudsim.*;
 import org.cloudbus.cloudsim.power.PowerHost;
-import org.cloudbus.cloudsim.power.models.PowerModel;
-import org.cloudbus.cloudsim.provisioners.BwProvisioner;
-import org.cloudbus.cloudsim.provisioners.PeProvisioner;
-import org.cloudbus.cloudsim.provisioners.RamProvisioner;
 import qrbg.ServiceDeniedException;
 
 /**
@@ -56,21 +52,37 @@ public class EntityFactory {
     /**
      * Creates instances of CloudSim's PowerDatacenter class from a list of 
      * datacenter registries.
+     * The host lists of all datacenters are built concurrently. Datacenters
+     * are then created in the order of the list, so they always get the same
+     * entity ids.
      * 
-     * @param   dcrList a list of datacenter registries.
-     * @return          a map containing names of datacenters as keys and
-     *                  PowerDatacenter instances as values.
-     * @since           1.0
+     * @param   environment the snapshot of the environment.
+     * @return              a map containing names of datacenters as keys and
+     *                      PowerDatacenter instances as values.
+     * @since               1.0
      */    
-    static HashMap<String, PowerDatacenter> createDatacenters() {
-        List<DatacenterRegistry> dcrList = DatacenterRegistryBusiness.getListOfDatacenters();
+    static HashMap<String, PowerDatacenter> createDatacenters(EnvironmentSnapshot environment) {
+        List<DatacenterRegistry> dcrList = environment.getDatacenters();
         HashMap<String, PowerDatacenter> map = new HashMap<String, PowerDatacenter>();
 
-        for (DatacenterRegistry dcr : dcrList) {
-            List<PowerHost> hostList = createHosts(dcr.getHostList());
-            if (hostList == null) {
-                return null;
-            }
+        List<Callable<List<PowerHost>>> hostTasks = new ArrayList<Callable<List<PowerHost>>>();
+        for (final DatacenterRegistry dcr : dcrList) {
+            hostTasks.add(new Callable<List<PowerHost>>() {
+                @Override
+                public List<PowerHost> call() throws EntityCreationException {
+                    return createHosts(dcr.getHostList());
+                }
+            });
+        }
+
+        List<List<PowerHost>> hostLists = invokeAll(hostTasks);
+        if (hostLists == null) {
+            return null;
+        }
+
+        for (int d = 0; d < dcrList.size(); d++) {
+            DatacenterRegistry dcr = dcrList.get(d);
+            List<PowerHost> hostList = hostLists.get(d);
 
             DatacenterCharacteristics chars = new DatacenterCharacteristics(dcr.getArchitecture(),
                     dcr.getOs(),
@@ -92,7 +104,7 @@ public class EntityFactory {
                                                                          dcr.getSchedulingInterval(),
                                                                          dcr.getAllocationPolicyAlias());
                 if (allocationPolicy == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + dcr.getAllocationPolicyAlias() + "\" allocation policy.");
+                    Simulation.getMonitor().showErrorMessage("Error loading \"" + dcr.getAllocationPolicyAlias() + "\" allocation policy.");
                     return null;
                 }
 
@@ -121,75 +133,26 @@ public class EntityFactory {
     /**
      * Creates instances of CloudSim's PowerHost class from a list of 
      * host registries.
+     * The hosts of each registry are created from a {@link HostTemplate}.
      * 
-     * @param   hostList    a list of datacenter registries.
-     * @return              a list of PowerHost instances.
-     * @since               1.0
+     * @param   hostList                    a list of datacenter registries.
+     * @return                              a list of PowerHost instances.
+     * @throws  EntityCreationException     if any component of the hosts
+     *                                      could not be loaded.
+     * @since                               1.0
      */        
-    static List<PowerHost> createHosts(List<HostRegistry> hostList) {
+    static List<PowerHost> createHosts(List<HostRegistry> hostList) throws EntityCreationException {
         List<PowerHost> list = new ArrayList<PowerHost>();
 
         int i = 0;
         for (HostRegistry hr : hostList) {
-            for (int n = 0; n < hr.getAmount(); n++) {
-                List<Pe> peList = createPes(hr);
-                if (peList == null) {
-                    return null;
-                }
-
-                RamProvisioner rp = cloudreports.enums.RamProvisioner.getInstance(hr.getRamProvisionerAlias()).getProvisioner(hr.getRam(), hr.getRamProvisionerAlias());
-                if (rp == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + hr.getRamProvisionerAlias() + "\" RAM provisioner.");
-                    return null;
-                }
-
-                BwProvisioner bp = cloudreports.enums.BwProvisioner.getInstance(hr.getBwProvisionerAlias()).getProvisioner(hr.getBw(), hr.getBwProvisionerAlias());
-                if (bp == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + hr.getBwProvisionerAlias() + "\" bandwidth provisioner.");
-                    return null;
-                }
-
-                VmScheduler vs = cloudreports.enums.VmScheduler.getInstance(hr.getSchedulingPolicyAlias()).getScheduler(peList, hr.getSchedulingPolicyAlias());
-                if (vs == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + hr.getSchedulingPolicyAlias() + "\" VM scheduler.");
-                    return null;
-                }
-                
-                PowerModel pm = cloudreports.enums.PowerModel.getInstance(hr.getPowerModelAlias()).getModel(hr.getMaxPower(), hr.getStaticPowerPercent(), hr.getPowerModelAlias());
-                if (pm == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + hr.getPowerModelAlias() + "\" power model.");
-                    return null;
-                }
-
-                list.add(new PowerHost(i, rp, bp, hr.getStorage(), peList, vs, pm));
+            HostTemplate template = new HostTemplate(hr);
+            for (int n = 0; n < template.getAmount(); n++) {
+                list.add(template.createHost(i));
                 i++;
             }
         }
 
-
-        return list;
-    }
-
-    /**
-     * Creates instances of CloudSim's PowerPe class from a host registry.
-     * 
-     * @param   hr  a host registry.
-     * @return      a list of PowerPe instances.
-     * @since       1.0
-     */     
-    static List<Pe> createPes(HostRegistry hr) {
-        List<Pe> list = new ArrayList<Pe>();
-
-        for (int i = 0; i < hr.getNumOfPes(); i++) {
-            PeProvisioner pp = cloudreports.enums.PeProvisioner.getInstance(hr.getPeProvisionerAlias()).getProvisioner(hr.getMipsPerPe(), hr.getPeProvisionerAlias());
-            if (pp == null) {
-                Dialog.showErrorMessage(null, "Error loading \"" + hr.getPeProvisionerAlias() + "\" PE provisioner.");
-                return null;
-            }
-
-            list.add(new Pe(i, pp));
-        }
-
         return list;
     }
 
@@ -221,46 +184,68 @@ public class EntityFactory {
     /**
      * Creates instances of CloudSim's DatacenterBroker class from a list of
      * customer registries.
+     * Brokers are created in the order of the list, so they always get the
+     * same entity ids. The virtual machines and cloudlets of all customers
+     * are then built concurrently, each customer drawing from its own stream
+     * of random numbers.
      * 
-     * @param   customerList    a list of customer registries.
+     * @param   environment     the snapshot of the environment.
      * @return                  a map containing names of customers as keys and
      *                          DatacenterBroker instances as values.
      * @since                   1.0
      */     
-    static HashMap<String, DatacenterBroker> createBrokers() {
-        List<CustomerRegistry> customerList = CustomerRegistryBusiness.getListOfCustomers();
+    static HashMap<String, DatacenterBroker> createBrokers(EnvironmentSnapshot environment) {
+        List<CustomerRegistry> customerList = environment.getCustomers();
         HashMap<String, DatacenterBroker> map = new HashMap<String, DatacenterBroker>();
+        List<DatacenterBroker> brokerList = new ArrayList<DatacenterBroker>();
+        List<Callable<List<Vm>>> vmTasks = new ArrayList<Callable<List<Vm>>>();
+        List<Callable<List<Cloudlet>>> cloudletTasks = new ArrayList<Callable<List<Cloudlet>>>();
 
-        try {
-            for (CustomerRegistry cr : customerList) {
-                UtilizationProfile up = cr.getUtilizationProfile();
-                String name = cr.getName();
+        for (final CustomerRegistry cr : customerList) {
+            final UtilizationProfile up = cr.getUtilizationProfile();
+            String name = cr.getName();
 
-                DatacenterBroker broker = BrokerPolicy.getInstance(up.getBrokerPolicyAlias()).createBroker(name, up.getBrokerPolicyAlias());
-                if (broker == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + up.getBrokerPolicyAlias() + "\" broker.");
-                    return null;
+            DatacenterBroker broker = BrokerPolicy.getInstance(up.getBrokerPolicyAlias()).createBroker(name, up.getBrokerPolicyAlias());
+            if (broker == null) {
+                Simulation.getMonitor().showErrorMessage("Error loading \"" + up.getBrokerPolicyAlias() + "\" broker.");
+                return null;
+            }
+            brokerList.add(broker);
+
+            final int brokerId = broker.getId();
+            final long numOfVms = environment.getNumOfVms(name);
+            final RandomStream stream = RandomNumberGenerator.getStream(name);
+            vmTasks.add(new Callable<List<Vm>>() {
+                @Override
+                public List<Vm> call() throws EntityCreationException {
+                    return createVms(cr.getVmList(), brokerId);
                 }
-
-                int brokerId = broker.getId();
-                List<Vm> vmList = createVms(cr.getVmList(), brokerId);
-                if (vmList == null) {
-                    return null;
+            });
+            cloudletTasks.add(new Callable<List<Cloudlet>>() {
+                @Override
+                public List<Cloudlet> call() throws EntityCreationException, IOException, ServiceDeniedException {
+                    return createCloudlets(up, brokerId, numOfVms, stream);
                 }
+            });
+        }
 
-                broker.submitVmList(vmList);
-                List<Cloudlet> cloudletList = createCloudlets(up, brokerId, new CustomerRegistryDAO().getNumOfVms(cr.getId()));
-                if (cloudletList == null) {
-                    return null;
-                }
+        List<List<Vm>> vmLists = invokeAll(vmTasks);
+        if (vmLists == null) {
+            return null;
+        }
 
-                broker.submitCloudletList(cloudletList);
-                map.put(cr.getName(), broker);
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(Simulation.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (ServiceDeniedException ex) {
-            Logger.getLogger(Simulation.class.getName()).log(Level.SEVERE, null, ex);
+        List<List<Cloudlet>> cloudletLists = invokeAll(cloudletTasks);
+        if (cloudletLists == null) {
+            return null;
+        }
+
+        for (int c = 0; c < customerList.size(); c++) {
+            DatacenterBroker broker = brokerList.get(c);
+            List<Vm> vmList = vmLists.get(c);
+            List<Cloudlet> cloudletList = cloudletLists.get(c);
+            broker.submitVmList(vmList);
+            broker.submitCloudletList(cloudletList);
+            map.put(customerList.get(c).getName(), broker);
         }
 
         return map;
@@ -270,12 +255,15 @@ public class EntityFactory {
      * Creates instances of CloudSim's Vm class from a list of virtual machine
      * registries.
      * 
-     * @param   vmList      a list of virtual machine registries.
-     * @param   brokerId    the id of the broker that owns the virtual machines. 
-     * @return              a list of Vm instances.
-     * @since               1.0
+     * @param   vmList                      a list of virtual machine registries.
+     * @param   brokerId                    the id of the broker that owns the
+     *                                      virtual machines. 
+     * @return                              a list of Vm instances.
+     * @throws  EntityCreationException     if the cloudlet scheduler could
+     *                                      not be loaded.
+     * @since                               1.0
      */         
-    static List<Vm> createVms(List<VirtualMachineRegistry> vmList, int brokerId) {
+    static List<Vm> createVms(List<VirtualMachineRegistry> vmList, int brokerId) throws EntityCreationException {
         List<Vm> list = new ArrayList<Vm>();
 
         int vmId = 0;
@@ -283,8 +271,7 @@ public class EntityFactory {
             for (int n = 0; n < vmr.getAmount(); n++) {
                 CloudletScheduler cs = cloudreports.enums.CloudletScheduler.getInstance(vmr.getSchedulingPolicyAlias()).getScheduler(vmr.getMips(), vmr.getPesNumber(), vmr.getSchedulingPolicyAlias());
                 if (cs == null) {
-                    Dialog.showErrorMessage(null, "Error loading \"" + vmr.getSchedulingPolicyAlias() + "\" cloudlet scheduler.");
-                    return null;
+                    throw new EntityCreationException("Error loading \"" + vmr.getSchedulingPolicyAlias() + "\" cloudlet scheduler.");
                 }
 
 
@@ -307,36 +294,42 @@ public class EntityFactory {
      * Creates instances of CloudSim's Cloudlet class from a customer's
      * utilization profile.
      * 
-     * @param   ugr         the utilization profile.
-     * @param   brokerId    the id of the broker that owns the cloudlets.
-     * @param   numOfVms    the number of virtual machines.
-     * @return              a list of Cloudlet instances.
-     * @since               1.0
+     * @param   ugr                         the utilization profile.
+     * @param   brokerId                    the id of the broker that owns
+     *                                      the cloudlets.
+     * @param   numOfVms                    the number of virtual machines.
+     * @param   stream                      the stream of random numbers of
+     *                                      the customer.
+     * @return                              a list of Cloudlet instances.
+     * @throws  EntityCreationException     if a utilization model could
+     *                                      not be loaded.
+     * @throws  IOException                 if random numbers could not be
+     *                                      obtained from the QRBG service.
+     * @throws  ServiceDeniedException      if the QRBG account is not valid.
+     * @since                               1.0
      */          
-    static List<Cloudlet> createCloudlets(UtilizationProfile ugr, int brokerId, long numOfVms) throws IOException, ServiceDeniedException {
+    static List<Cloudlet> createCloudlets(UtilizationProfile ugr, int brokerId, long numOfVms, RandomStream stream)
+            throws EntityCreationException, IOException, ServiceDeniedException {
         List<Cloudlet> list = new ArrayList<Cloudlet>();
 
         for (int i = 0; i < numOfVms; i++) {
             UtilizationModel cpu = cloudreports.enums.UtilizationModel.getInstance(ugr.getUtilizationModelCpuAlias()).getModel(ugr.getUtilizationModelCpuAlias());
             if (cpu == null) {
-                Dialog.showErrorMessage(null, "Error loading \"" + ugr.getUtilizationModelCpuAlias() + "\" CPU utilization model.");
-                return null;
+                throw new EntityCreationException("Error loading \"" + ugr.getUtilizationModelCpuAlias() + "\" CPU utilization model.");
             }
 
             UtilizationModel ram = cloudreports.enums.UtilizationModel.getInstance(ugr.getUtilizationModelRamAlias()).getModel(ugr.getUtilizationModelRamAlias());
             if (ram == null) {
-                Dialog.showErrorMessage(null, "Error loading \"" + ugr.getUtilizationModelRamAlias() + "\" RAM utilization model.");
-                return null;
+                throw new EntityCreationException("Error loading \"" + ugr.getUtilizationModelRamAlias() + "\" RAM utilization model.");
             }
 
             UtilizationModel bw = cloudreports.enums.UtilizationModel.getInstance(ugr.getUtilizationModelBwAlias()).getModel(ugr.getUtilizationModelBwAlias());
             if (bw == null) {
-                Dialog.showErrorMessage(null, "Error loading \"" + ugr.getUtilizationModelBwAlias() + "\" bandwidth utilization model.");
-                return null;
+                throw new EntityCreationException("Error loading \"" + ugr.getUtilizationModelBwAlias() + "\" bandwidth utilization model.");
             }
 
             Cloudlet cloudlet = new Cloudlet(i,
-                    (long) ((long) ugr.getLength() * RandomNumberGenerator.getRandomNumbers(1).get(0)),
+                    (long) ((long) ugr.getLength() * RandomNumberGenerator.getRandomNumber(stream)),
                     ugr.getCloudletsPesNumber(),
                     ugr.getFileSize(),
                     ugr.getOutputSize(),
@@ -352,33 +345,73 @@ public class EntityFactory {
         return list;
     }
 
+    /**
+     * Runs a list of independent tasks on a pool of threads and gets their
+     * results.
+     * No CloudSim entity may be created by the tasks, since entity ids depend
+     * on the order entities are created in. Tasks do not report their
+     * failures; the failure of the first failed task, in the order of the
+     * list, is reported to the monitor by the calling thread.
+     * 
+     * @param   tasks   the tasks to be run.
+     * @return          the results of the tasks, in the order of the list, or
+     *                  <code>null</code> if any of the tasks failed.
+     * @since           1.2
+     */
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+
+        int numberOfThreads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            for (Future<T> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Simulation.getMonitor().showErrorMessage("The creation of simulation entities has been interrupted.");
+            return null;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof EntityCreationException) {
+                Simulation.getMonitor().showErrorMessage(cause.getMessage());
+            } else {
+                Logger.getLogger(EntityFactory.class.getName()).log(Level.SEVERE, null, cause);
+                Simulation.getMonitor().showErrorMessage("Error creating simulation entities: " + cause);
+            }
+            return null;
+        } finally {
+            executor.shutdown();
+        }
+
+        return results;
+    }
+
     /**
      * Sets up all the network links to be simulated,
      * 
+     * @param   environment the snapshot of the environment.
      * @param   datacenters the datacenters being simulated.
      * @param   brokers     the brokers being simulated.
      * @since               1.0
      */      
-    static void setUpNetworkLinks(HashMap<String, PowerDatacenter> datacenters,
+    static void setUpNetworkLinks(EnvironmentSnapshot environment,
+            HashMap<String, PowerDatacenter> datacenters,
             HashMap<String, DatacenterBroker> brokers) {
 
-        NetworkMapEntryDAO neDAO = new NetworkMapEntryDAO();
-
         /*
          * Establish all links whose source is a datacenter
          */
-        DatacenterRegistryDAO drDAO = new DatacenterRegistryDAO();
-        String[] datacenterNames = drDAO.getAllDatacentersNames();
+        for (DatacenterRegistry dcr : environment.getDatacenters()) {
+            PowerDatacenter src = datacenters.get(dcr.getName());
 
-        for (String source : datacenterNames) {
-            PowerDatacenter src = datacenters.get(source);
-
-            List<NetworkMapEntry> destinationList = neDAO.getListOfDestinations(source);
-
-            for (NetworkMapEntry entry : destinationList) {
+            for (NetworkMapEntry entry : environment.getDestinations(dcr.getName())) {
                 String destinationName = entry.getDestination();
 
-                if (drDAO.getDatacenterRegistry(destinationName) != null) { //destination is a datacenter
+                if (environment.isDatacenter(destinationName)) { //destination is a datacenter
                     PowerDatacenter dest = datacenters.get(destinationName);
                     NetworkTopology.addLink(src.getId(), dest.getId(), entry.getBandwidth(), entry.getLatency());
                 } else { //destination is a customer
@@ -392,18 +425,13 @@ public class EntityFactory {
         /*
          * Establish all links whose source is a customer
          */
-        CustomerRegistryDAO crDAO = new CustomerRegistryDAO();
-        String[] customerNames = crDAO.getCustomersNames();
-
-        for (String source : customerNames) {
-            DatacenterBroker src = brokers.get(source);
-
-            List<NetworkMapEntry> destinationList = neDAO.getListOfDestinations(source);
+        for (CustomerRegistry cr : environment.getCustomers()) {
+            DatacenterBroker src = brokers.get(cr.getName());
 
-            for (NetworkMapEntry entry : destinationList) {
+            for (NetworkMapEntry entry : environment.getDestinations(cr.getName())) {
                 String destinationName = entry.getDestination();
 
-                if (drDAO.getDatacenterRegistry(destinationName) != null) { //destination is a datacenter
+                if (environment.isDatacenter(destinationName)) { //destination is a datacenter
                     PowerDatacenter dest = datacenters.get(destinationName);
                     NetworkTopology.addLink(src.getId(), dest.getId(), entry.getBandwidth(), entry.getLatency());
                 } else { //destination is a customer
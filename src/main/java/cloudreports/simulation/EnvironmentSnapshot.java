@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+import cloudreports.database.HibernateUtil;
+import cloudreports.models.CustomerRegistry;
+import cloudreports.models.DatacenterRegistry;
+import cloudreports.models.NetworkMapEntry;
+import cloudreports.models.VirtualMachineRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+
+/**
+ * An in-memory copy of the customers, datacenters and network map of an
+ * environment, read from its database in a single session.
+ * Simulation entities are built from the snapshot instead of querying the
+ * database for every customer, datacenter and network link.
+ * The lists and maps of a snapshot cannot be modified.
+ *
+ * @see         EntityFactory
+ * @since       1.2
+ */
+public final class EnvironmentSnapshot {
+
+    /** The snapshot of the last loaded environment. */
+    private static volatile EnvironmentSnapshot current;
+
+    /** The database the environment was read from. */
+    private final String database;
+
+    /** The customers of the environment, in database order. */
+    private final List<CustomerRegistry> customers;
+
+    /** The datacenters of the environment, in database order. */
+    private final List<DatacenterRegistry> datacenters;
+
+    /** The customers of the environment, by name. */
+    private final Map<String, CustomerRegistry> customersByName;
+
+    /** The number of virtual machines of each customer, by name. */
+    private final Map<String, Integer> numbersOfVms;
+
+    /** The names of the datacenters of the environment. */
+    private final Set<String> datacenterNames;
+
+    /** The network map entries of the environment, by source. */
+    private final Map<String, List<NetworkMapEntry>> destinations;
+
+    /**
+     * Creates a snapshot from the registries of an environment.
+     *
+     * @param   database        the name of the database.
+     * @param   customers       the customers of the environment.
+     * @param   datacenters     the datacenters of the environment.
+     * @param   entries         the network map entries of the environment.
+     * @since                   1.2
+     */
+    private EnvironmentSnapshot(String database, List<CustomerRegistry> customers,
+            List<DatacenterRegistry> datacenters, List<NetworkMapEntry> entries) {
+        this.database = database;
+        this.customers = Collections.unmodifiableList(new ArrayList<CustomerRegistry>(customers));
+        this.datacenters = Collections.unmodifiableList(new ArrayList<DatacenterRegistry>(datacenters));
+
+        Map<String, CustomerRegistry> byName = new HashMap<String, CustomerRegistry>();
+        Map<String, Integer> vms = new HashMap<String, Integer>();
+        for (CustomerRegistry cr : customers) {
+            byName.put(cr.getName(), cr);
+
+            int numOfVms = 0;
+            for (VirtualMachineRegistry vmr : cr.getVmList()) {
+                numOfVms += vmr.getAmount();
+            }
+            vms.put(cr.getName(), numOfVms);
+        }
+        this.customersByName = Collections.unmodifiableMap(byName);
+        this.numbersOfVms = Collections.unmodifiableMap(vms);
+
+        Set<String> names = new HashSet<String>();
+        for (DatacenterRegistry dcr : datacenters) {
+            names.add(dcr.getName());
+        }
+        this.datacenterNames = Collections.unmodifiableSet(names);
+
+        Map<String, List<NetworkMapEntry>> bySource = new HashMap<String, List<NetworkMapEntry>>();
+        for (NetworkMapEntry entry : entries) {
+            List<NetworkMapEntry> list = bySource.get(entry.getSource());
+            if (list == null) {
+                list = new ArrayList<NetworkMapEntry>();
+                bySource.put(entry.getSource(), list);
+            }
+            list.add(entry);
+        }
+        for (Map.Entry<String, List<NetworkMapEntry>> e : bySource.entrySet()) {
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+        }
+        this.destinations = Collections.unmodifiableMap(bySource);
+    }
+
+    /**
+     * Reads the environment of the active database and makes it the current
+     * snapshot.
+     * Customers with their virtual machines, datacenters with their hosts
+     * and the network map are read with one query each, in a single session.
+     *
+     * @return  the snapshot of the environment, or <code>null</code> if it
+     *          could not be read.
+     * @since   1.2
+     */
+    public static EnvironmentSnapshot load() {
+        Session session = HibernateUtil.getSession();
+        EnvironmentSnapshot snapshot = null;
+        try {
+            List<CustomerRegistry> customers = (List<CustomerRegistry>) session.createCriteria(CustomerRegistry.class)
+                                                                               .setFetchMode("vmList", FetchMode.JOIN)
+                                                                               .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
+                                                                               .addOrder(Order.asc("id"))
+                                                                               .list();
+            List<DatacenterRegistry> datacenters = (List<DatacenterRegistry>) session.createCriteria(DatacenterRegistry.class)
+                                                                                     .setFetchMode("hostList", FetchMode.JOIN)
+                                                                                     .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
+                                                                                     .addOrder(Order.asc("id"))
+                                                                                     .list();
+            List<NetworkMapEntry> entries = (List<NetworkMapEntry>) session.createCriteria(NetworkMapEntry.class)
+                                                                           .addOrder(Order.asc("id"))
+                                                                           .list();
+
+            snapshot = new EnvironmentSnapshot(HibernateUtil.getActiveDatabase(), customers, datacenters, entries);
+        }
+        catch (HibernateException ex) {
+            Logger.getLogger(EnvironmentSnapshot.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            HibernateUtil.closeSession(session);
+        }
+
+        current = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Gets the snapshot of the environment being simulated.
+     *
+     * @return  the last loaded snapshot, or <code>null</code> if none was
+     *          loaded for the active database.
+     * @since   1.2
+     */
+    public static EnvironmentSnapshot getCurrent() {
+        EnvironmentSnapshot snapshot = current;
+        if (snapshot == null || !snapshot.getDatabase().equals(HibernateUtil.getActiveDatabase())) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the database the environment was read from.
+     *
+     * @return  the name of the database.
+     * @since   1.2
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * Gets the customers of the environment.
+     *
+     * @return  the customer registries, in database order.
+     * @since   1.2
+     */
+    public List<CustomerRegistry> getCustomers() {
+        return customers;
+    }
+
+    /**
+     * Gets the datacenters of the environment.
+     *
+     * @return  the datacenter registries, in database order.
+     * @since   1.2
+     */
+    public List<DatacenterRegistry> getDatacenters() {
+        return datacenters;
+    }
+
+    /**
+     * Gets a customer by its name.
+     *
+     * @param   customerName    the name of the customer.
+     * @return                  the customer registry, or <code>null</code>
+     *                          if there is no such customer.
+     * @since                   1.2
+     */
+    public CustomerRegistry getCustomer(String customerName) {
+        return customersByName.get(customerName);
+    }
+
+    /**
+     * Gets the number of virtual machines deployed by a customer.
+     *
+     * @param   customerName    the name of the customer.
+     * @return                  the number of virtual machines of the
+     *                          customer, or 0 if there is no such customer.
+     * @since                   1.2
+     */
+    public int getNumOfVms(String customerName) {
+        Integer numOfVms = numbersOfVms.get(customerName);
+        return numOfVms == null ? 0 : numOfVms;
+    }
+
+    /**
+     * Indicates whether an entity of the environment is a datacenter.
+     *
+     * @param   entityName  the name of the entity.
+     * @return              <code>true</code> if the entity is a datacenter;
+     *                      <code>false</code> otherwise.
+     * @since               1.2
+     */
+    public boolean isDatacenter(String entityName) {
+        return datacenterNames.contains(entityName);
+    }
+
+    /**
+     * Gets the network map entries on which an entity is the source.
+     *
+     * @param   entityName  the name of the source entity.
+     * @return              the network map entries of the entity; an empty
+     *                      list if there are none.
+     * @since               1.2
+     */
+    public List<NetworkMapEntry> getDestinations(String entityName) {
+        List<NetworkMapEntry> list = destinations.get(entityName);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+import cloudreports.models.HostRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.VmScheduler;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.power.models.PowerModel;
+import org.cloudbus.cloudsim.provisioners.BwProvisioner;
+import org.cloudbus.cloudsim.provisioners.PeProvisioner;
+import org.cloudbus.cloudsim.provisioners.RamProvisioner;
+
+/**
+ * Creates identical CloudSim hosts from a host registry.
+ * The provisioner, scheduler and power model types of the registry are
+ * resolved once, when the template is created, instead of once for every
+ * copy of the host.
+ * Native power models cannot be changed after they are created, so a single
+ * instance is shared by all hosts of the template. Provisioners, schedulers
+ * and power models loaded from extensions keep state of their own and are
+ * created for each host.
+ *
+ * @see         EntityFactory#createHosts(java.util.List)
+ * @since       1.2
+ */
+class HostTemplate {
+
+    /** The host registry the hosts are created from. */
+    private final HostRegistry hr;
+
+    /** The type of PE provisioner of the hosts. */
+    private final cloudreports.enums.PeProvisioner peProvisionerType;
+
+    /** The type of RAM provisioner of the hosts. */
+    private final cloudreports.enums.RamProvisioner ramProvisionerType;
+
+    /** The type of bandwidth provisioner of the hosts. */
+    private final cloudreports.enums.BwProvisioner bwProvisionerType;
+
+    /** The type of virtual machine scheduler of the hosts. */
+    private final cloudreports.enums.VmScheduler vmSchedulerType;
+
+    /** The type of power model of the hosts. */
+    private final cloudreports.enums.PowerModel powerModelType;
+
+    /** The power model shared by all hosts, or <code>null</code> if each
+     *  host has its own.
+     */
+    private final PowerModel sharedPowerModel;
+
+    /**
+     * Creates a template from a host registry.
+     *
+     * @param   hr  the host registry.
+     * @since       1.2
+     */
+    HostTemplate(HostRegistry hr) {
+        this.hr = hr;
+        this.peProvisionerType = cloudreports.enums.PeProvisioner.getInstance(hr.getPeProvisionerAlias());
+        this.ramProvisionerType = cloudreports.enums.RamProvisioner.getInstance(hr.getRamProvisionerAlias());
+        this.bwProvisionerType = cloudreports.enums.BwProvisioner.getInstance(hr.getBwProvisionerAlias());
+        this.vmSchedulerType = cloudreports.enums.VmScheduler.getInstance(hr.getSchedulingPolicyAlias());
+        this.powerModelType = cloudreports.enums.PowerModel.getInstance(hr.getPowerModelAlias());
+
+        if (powerModelType != cloudreports.enums.PowerModel.EXTENSION) {
+            this.sharedPowerModel = createPowerModel();
+        } else {
+            this.sharedPowerModel = null;
+        }
+    }
+
+    /**
+     * Gets the number of hosts described by the template.
+     *
+     * @return  the number of hosts.
+     * @since   1.2
+     */
+    int getAmount() {
+        return hr.getAmount();
+    }
+
+    /**
+     * Creates a host.
+     *
+     * @param   id                          the id of the host.
+     * @return                              a new PowerHost instance.
+     * @throws  EntityCreationException     if any of its components could
+     *                                      not be loaded.
+     * @since                               1.2
+     */
+    PowerHost createHost(int id) throws EntityCreationException {
+        List<Pe> peList = createPes();
+
+        RamProvisioner rp = ramProvisionerType.getProvisioner(hr.getRam(), hr.getRamProvisionerAlias());
+        if (rp == null) {
+            throw new EntityCreationException("Error loading \"" + hr.getRamProvisionerAlias() + "\" RAM provisioner.");
+        }
+
+        BwProvisioner bp = bwProvisionerType.getProvisioner(hr.getBw(), hr.getBwProvisionerAlias());
+        if (bp == null) {
+            throw new EntityCreationException("Error loading \"" + hr.getBwProvisionerAlias() + "\" bandwidth provisioner.");
+        }
+
+        VmScheduler vs = vmSchedulerType.getScheduler(peList, hr.getSchedulingPolicyAlias());
+        if (vs == null) {
+            throw new EntityCreationException("Error loading \"" + hr.getSchedulingPolicyAlias() + "\" VM scheduler.");
+        }
+
+        PowerModel pm = sharedPowerModel != null ? sharedPowerModel : createPowerModel();
+        if (pm == null) {
+            throw new EntityCreationException("Error loading \"" + hr.getPowerModelAlias() + "\" power model.");
+        }
+
+        return new PowerHost(id, rp, bp, hr.getStorage(), peList, vs, pm);
+    }
+
+    /**
+     * Creates the processing elements of a host.
+     *
+     * @return                              a list of Pe instances.
+     * @throws  EntityCreationException     if the PE provisioner could not
+     *                                      be loaded.
+     * @since                               1.2
+     */
+    private List<Pe> createPes() throws EntityCreationException {
+        List<Pe> list = new ArrayList<Pe>(hr.getNumOfPes());
+
+        for (int i = 0; i < hr.getNumOfPes(); i++) {
+            PeProvisioner pp = peProvisionerType.getProvisioner(hr.getMipsPerPe(), hr.getPeProvisionerAlias());
+            if (pp == null) {
+                throw new EntityCreationException("Error loading \"" + hr.getPeProvisionerAlias() + "\" PE provisioner.");
+            }
+
+            list.add(new Pe(i, pp));
+        }
+
+        return list;
+    }
+
+    /**
+     * Creates a power model for the hosts.
+     *
+     * @return  a CloudSim's PowerModel instance, or <code>null</code> if it
+     *          could not be loaded.
+     * @since   1.2
+     */
+    private PowerModel createPowerModel() {
+        return powerModelType.getModel(hr.getMaxPower(), hr.getStaticPowerPercent(), hr.getPowerModelAlias());
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+import cloudreports.business.SettingBusiness;
+import cloudreports.database.HibernateUtil;
+import cloudreports.enums.RandomNumbersFactory;
+import cloudreports.utils.ElapsedTime;
+import cloudreports.utils.FileIO;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the repetitions of the simulations of a list of environments
+ * concurrently.
+ * Since CloudSim keeps its state in static fields, each repetition runs in a
+ * separate worker process with its own CloudSim engine and its own session
+ * factory. Every worker process runs in a temporary working directory holding
+ * a private copy of the environment, so that temporary report data and log
+ * files are not shared. Reports are written to the reports directory of the
+ * application, just like in sequential simulations.
+ * <p>
+ * The repetitions of all environments share a single queue, interleaved by
+ * repetition number, so several environments are simulated at once and the
+ * progress of all of them is merged into the same monitor.
+ * <p>
+ * Each repetition is seeded with a value derived from a base seed and its
+ * identification number, so results do not depend on the number of workers
+ * or on the order repetitions are scheduled in. Environments that take their
+ * random numbers from the QRBG pool are rejected, since every worker would
+ * read the same numbers from its copy of the pool.
+ * <p>
+ * Parallel simulations are started from the command line only; the graphical
+ * interface runs a sequential {@link Simulation}.
+ *
+ * @see         BatchSimulation
+ * @see         cloudreports.utils.RandomNumberGenerator#getRepetitionSeed(long, int)
+ * @since       1.2
+ */
+public class ParallelSimulation implements Runnable {
+
+    /** The names of the environments to be simulated. */
+    private String[] environmentsNames;
+
+    /** The monitor that receives progress notifications and messages. */
+    private SimulationMonitor monitor;
+
+    /** The number of worker processes. */
+    private int numberOfWorkers;
+
+    /** The base seed of the simulations. */
+    private long seed;
+
+    /**
+     * The number of simulations of specific environments. It overrides the
+     * NumberOfSimulations setting of the environments it contains.
+     */
+    private Map<String, Integer> numbersOfSimulations;
+
+    /** The number of finished simulations of each environment. */
+    private Map<String, Integer> finishedSimulations;
+
+    /** The total number of simulations of all environments. */
+    private int totalOfSimulations;
+
+    /** The number of finished simulations of all environments. */
+    private int totalOfFinishedSimulations;
+
+    /** The worker processes that are running. */
+    private final List<Process> processes = new LinkedList<Process>();
+
+    /** Indicates whether the simulations have been aborted. */
+    private volatile boolean aborted;
+
+    /**
+     * Initializes a new instance of this class.
+     *
+     * @param   environmentsNames   the names of the environments to be
+     *                              simulated, without the .cre extension.
+     * @param   simulationMonitor   the monitor that receives progress
+     *                              notifications and messages.
+     * @param   numberOfWorkers     the number of worker processes.
+     * @param   seed                the base seed of the simulations.
+     * @since                       1.2
+     */
+    public ParallelSimulation(String[] environmentsNames, SimulationMonitor simulationMonitor,
+                              int numberOfWorkers, long seed) {
+        this.environmentsNames = environmentsNames;
+        this.monitor = simulationMonitor;
+        this.numberOfWorkers = Math.max(1, numberOfWorkers);
+        this.seed = seed;
+        this.numbersOfSimulations = new HashMap<String, Integer>();
+        this.finishedSimulations = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Sets the number of simulations of a specific environment, overriding
+     * its NumberOfSimulations setting.
+     *
+     * @param   environmentName         the name of the environment.
+     * @param   numberOfSimulations     the number of simulations.
+     * @since                           1.2
+     */
+    public void setNumberOfSimulations(String environmentName, int numberOfSimulations) {
+        numbersOfSimulations.put(environmentName, numberOfSimulations);
+    }
+
+    /**
+     * Runs the repetitions of every environment, at most one per worker
+     * process at a time.
+     *
+     * @since   1.2
+     */
+    @Override
+    public void run() {
+        monitor.simulationsStarted();
+        double startTime = Calendar.getInstance().getTimeInMillis();
+
+        int maxNumberOfSimulations = 0;
+        totalOfSimulations = 0;
+        totalOfFinishedSimulations = 0;
+        for (String environmentName : environmentsNames) {
+            HibernateUtil.setActiveDatabase(environmentName + ".cre");
+            if (RandomNumbersFactory.getInstance(SettingBusiness.getRandomnessOption()) == RandomNumbersFactory.QRBG) {
+                monitor.showErrorMessage("The environment \"" + environmentName + "\" uses the QRBG random numbers "
+                        + "source, which cannot be shared by worker processes. Select the Java source or run its "
+                        + "simulations sequentially.");
+                monitor.simulationAborted();
+                return;
+            }
+            if (!numbersOfSimulations.containsKey(environmentName)) {
+                numbersOfSimulations.put(environmentName, SettingBusiness.getNumberOfSimulations());
+            }
+            Simulation.RemovePreviousReports();
+            finishedSimulations.put(environmentName, 0);
+            totalOfSimulations += numbersOfSimulations.get(environmentName);
+            maxNumberOfSimulations = Math.max(maxNumberOfSimulations, numbersOfSimulations.get(environmentName));
+        }
+
+        aborted = false;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int simulationId = 1; simulationId <= maxNumberOfSimulations; simulationId++) {
+                for (String environmentName : environmentsNames) {
+                    if (simulationId > numbersOfSimulations.get(environmentName)) continue;
+                    results.add(executor.submit(new Repetition(environmentName, simulationId)));
+                }
+            }
+            for (Future<Boolean> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(ParallelSimulation.class.getName()).log(Level.SEVERE, null, ex);
+                    monitor.showErrorMessage("A repetition has failed: " + ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            abort(executor);
+            monitor.simulationAborted();
+            return;
+        } finally {
+            executor.shutdown();
+        }
+
+        double finishTime = Calendar.getInstance().getTimeInMillis();
+        monitor.simulationsCompleted(new ElapsedTime(finishTime - startTime));
+    }
+
+    /**
+     * Stops all repetitions. Running worker processes are destroyed, which
+     * also unblocks the threads relaying their output, so every repetition
+     * deletes its working directory before the method returns.
+     *
+     * @param   executor    the executor running the repetitions.
+     * @since               1.2
+     */
+    private void abort(ExecutorService executor) {
+        aborted = true;
+        executor.shutdownNow();
+        synchronized (processes) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the end of a repetition and reports the merged progress of all
+     * environments.
+     *
+     * @param   environmentName the name of the simulated environment.
+     * @param   simulationId    the identification number of the simulation.
+     * @param   successful      indicates whether the repetition completed
+     *                          successfully or not.
+     * @since                   1.2
+     */
+    private synchronized void repetitionFinished(String environmentName, int simulationId, boolean successful) {
+        int finished = finishedSimulations.get(environmentName) + 1;
+        finishedSimulations.put(environmentName, finished);
+        totalOfFinishedSimulations++;
+
+        monitor.progressChanged("Simulation " + simulationId + " of " + environmentName
+                + (successful ? " has completed" : " has failed")
+                + " (" + finished + " of " + numbersOfSimulations.get(environmentName) + " of " + environmentName
+                + ", " + totalOfFinishedSimulations + " of " + totalOfSimulations + " overall).");
+    }
+
+    /**
+     * Gets the class path of the running application with absolute paths,
+     * so that it remains valid from the working directory of the workers.
+     *
+     * @return  the absolute class path.
+     * @since   1.2
+     */
+    private static String getAbsoluteClassPath() {
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (entry.length() == 0) continue;
+            if (classPath.length() > 0) classPath.append(File.pathSeparator);
+            classPath.append(new File(entry).getAbsolutePath());
+        }
+        return classPath.toString();
+    }
+
+    /**
+     * Gets the options of the running virtual machine, such as its heap size,
+     * so that the workers are started with the same options. Debugger agents
+     * are left out, since their ports cannot be shared.
+     *
+     * @return  the options of the running virtual machine.
+     * @since   1.2
+     */
+    private static List<String> getJvmOptions() {
+        List<String> options = new ArrayList<String>();
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (option.startsWith("-agentlib:jdwp") || option.startsWith("-Xrunjdwp")) continue;
+            options.add(option);
+        }
+        return options;
+    }
+
+    /**
+     * A single repetition of the simulation of an environment, run by a
+     * worker process.
+     *
+     * @since   1.2
+     */
+    private class Repetition implements Callable<Boolean> {
+
+        /** The name of the simulated environment. */
+        private String environmentName;
+
+        /** The identification number of the simulation. */
+        private int simulationId;
+
+        /**
+         * Initializes a new repetition.
+         *
+         * @param   environmentName the name of the simulated environment.
+         * @param   simulationId    the identification number of the simulation.
+         * @since                   1.2
+         */
+        Repetition(String environmentName, int simulationId) {
+            this.environmentName = environmentName;
+            this.simulationId = simulationId;
+        }
+
+        /**
+         * Runs the repetition in a worker process, relays its output to the
+         * monitor and updates the merged progress.
+         *
+         * @return  <code>true</code> if the worker process completed
+         *          successfully; <code>false</code> otherwise.
+         * @since   1.2
+         */
+        @Override
+        public Boolean call() throws InterruptedException {
+            boolean successful = run();
+            repetitionFinished(environmentName, simulationId, successful);
+            return successful;
+        }
+
+        /**
+         * Runs the worker process of the repetition.
+         *
+         * @return  <code>true</code> if the worker process completed
+         *          successfully; <code>false</code> otherwise.
+         * @since   1.2
+         */
+        private boolean run() throws InterruptedException {
+            String prefix = "[" + environmentName + " #" + simulationId + "] ";
+            File workingDirectory = null;
+            Process process = null;
+            try {
+                if (aborted) return false;
+                workingDirectory = File.createTempFile("cloudreports-", "");
+                workingDirectory.delete();
+                File environment = new File(new File(workingDirectory, "db"), environmentName + ".cre");
+                if (!FileIO.copyFile(new File("db", environmentName + ".cre"), environment)) {
+                    monitor.showErrorMessage(prefix + "The environment could not be copied to a working directory.");
+                    return false;
+                }
+
+                String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+                List<String> command = new ArrayList<String>();
+                command.add(java);
+                command.addAll(getJvmOptions());
+                command.add("-cp");
+                command.add(getAbsoluteClassPath());
+                command.add(BatchSimulation.class.getName());
+                command.add("-repetition");
+                command.add(String.valueOf(simulationId));
+                command.add("-seed");
+                command.add(String.valueOf(seed));
+                command.add(environmentName);
+
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.directory(workingDirectory);
+                builder.redirectErrorStream(true);
+                synchronized (processes) {
+                    if (aborted) return false;
+                    process = builder.start();
+                    processes.add(process);
+                }
+
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    monitor.progressChanged(prefix + line);
+                }
+                reader.close();
+
+                int exitValue = process.waitFor();
+                if (aborted) return false;
+                if (exitValue != 0) {
+                    monitor.showErrorMessage(prefix + "Worker process has exited with status " + exitValue + ".");
+                    return false;
+                }
+                return true;
+            } catch (IOException ex) {
+                if (aborted) return false;
+                Logger.getLogger(ParallelSimulation.class.getName()).log(Level.SEVERE, null, ex);
+                monitor.showErrorMessage(prefix + "Worker process has failed: " + ex.getMessage());
+                return false;
+            } finally {
+                if (process != null) {
+                    process.destroy();
+                    synchronized (processes) {
+                        processes.remove(process);
+                    }
+                }
+                if (workingDirectory != null) FileIO.deleteDirectory(workingDirectory);
+            }
+        }
+    }
+}
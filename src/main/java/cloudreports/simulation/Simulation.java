@@ -20,14 +20,21 @@
 package cloudreports.simulation;
 
 import cloudreports.business.SettingBusiness;
+import cloudreports.business.SettingsSnapshot;
+import cloudreports.dao.ColumnarReportDataStore;
 import cloudreports.dao.CustomerRegistryDAO;
 import cloudreports.dao.DatacenterRegistryDAO;
+import cloudreports.dao.RandomNumberPrefetcher;
+import cloudreports.dao.ReportDataWriter;
 import cloudreports.dao.SettingDAO;
+import cloudreports.database.Database;
 import cloudreports.database.HibernateUtil;
 import cloudreports.event.BaseCloudSimObservable;
+import cloudreports.extensions.ExtensionsLoader;
+import cloudreports.extensions.HostUtilizationMonitor;
 import cloudreports.extensions.PowerDatacenter;
-import cloudreports.gui.Dialog;
-import cloudreports.gui.MainView;
+import cloudreports.extensions.brokers.Broker;
+import cloudreports.extensions.brokers.CloudletStatistics;
 import cloudreports.models.CustomerRegistry;
 import cloudreports.models.Setting;
 import cloudreports.reports.DataCollector;
@@ -39,6 +46,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.cloudbus.cloudsim.DatacenterBroker;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.CloudSim;
@@ -58,9 +66,54 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
     /** A data collector. */
     private static DataCollector dataCollector;
     
+    /** The monitor of the utilization history of the simulated hosts. */
+    private static HostUtilizationMonitor hostUtilizationMonitor;
+    
+    /** The monitor that receives progress notifications and messages. */
+    private static SimulationMonitor monitor;
+    
     /** Indicates whether the mail notification feature is enabled or not. */
     private boolean isMailNotificationEnabled;
     
+    /** The names of the environments to be simulated. */
+    private String[] environmentsNames;
+    
+    /** 
+     * The number of simulations of specific environments. It overrides the
+     * NumberOfSimulations setting of the environments it contains.
+     */
+    private Map<String, Integer> numbersOfSimulations;
+    
+    /** The identification number of the first simulation of each environment. */
+    private int firstSimulationId = 1;
+    
+    /** Indicates whether reports from previous simulations must be removed. */
+    private boolean removePreviousReports = true;
+    
+    /** 
+     * The base seed of the simulations. When it is set, every repetition is
+     * seeded with a value derived from it and its identification number.
+     * Otherwise, the random numbers are reseeded from the clock at the start
+     * of every run.
+     */
+    private Long seed;
+    
+    /**
+     * Initializes a new instance of this class that simulates the given
+     * environments and reports its progress to the given monitor.
+     * 
+     * @param   environmentsNames   the names of the environments to be
+     *                              simulated, without the .cre extension.
+     * @param   simulationMonitor   the monitor that receives progress
+     *                              notifications and messages.
+     * @since                       1.2
+     */
+    public Simulation(String[] environmentsNames, SimulationMonitor simulationMonitor) {
+        this.environmentsNames = environmentsNames;
+        this.numbersOfSimulations = new HashMap<String, Integer>();
+        monitor = simulationMonitor;
+    }
+    
     /**
      * Gets a value that indicates whether the simulations are over or not.
      * 
@@ -79,6 +132,75 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
         return dataCollector;
     }
 
+    /**
+     * Gets the monitor of the utilization history of the simulated hosts.
+     * 
+     * @return  the host utilization monitor.
+     * @since   1.2
+     */    
+    public static HostUtilizationMonitor getHostUtilizationMonitor() {
+        return hostUtilizationMonitor;
+    }
+
+    /**
+     * Gets the monitor of the running simulations.
+     * 
+     * @return  the simulation monitor.
+     * @since   1.2
+     */    
+    public static SimulationMonitor getMonitor() {
+        return monitor;
+    }
+    
+    /**
+     * Sets the number of simulations of a specific environment, overriding 
+     * its NumberOfSimulations setting.
+     * 
+     * @param   environmentName         the name of the environment.
+     * @param   numberOfSimulations     the number of simulations.
+     * @since                           1.2
+     */    
+    public void setNumberOfSimulations(String environmentName, int numberOfSimulations) {
+        numbersOfSimulations.put(environmentName, numberOfSimulations);
+    }
+
+    /**
+     * Sets the identification number of the first simulation of each 
+     * environment. Simulations are run from this number up to the number of
+     * simulations of the environment.
+     * 
+     * @param   firstSimulationId   the identification number of the first
+     *                              simulation.
+     * @since                       1.2
+     */    
+    public void setFirstSimulation(int firstSimulationId) {
+        this.firstSimulationId = firstSimulationId;
+    }
+
+    /**
+     * Sets whether reports from previous simulations must be removed before
+     * the simulations of an environment start.
+     * 
+     * @param   removePreviousReports   <code>true</code> if previous reports
+     *                                  must be removed; <code>false</code>
+     *                                  otherwise.
+     * @since                           1.2
+     */    
+    public void setRemovePreviousReports(boolean removePreviousReports) {
+        this.removePreviousReports = removePreviousReports;
+    }
+
+    /**
+     * Sets the base seed of the simulations, making them reproducible.
+     * 
+     * @param   seed    the base seed.
+     * @see             RandomNumberGenerator#getRepetitionSeed(long, int)
+     * @since           1.2
+     */    
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     /** 
      * Loads each simulation environment and run its simulations.
      * 
@@ -87,22 +209,21 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
     @Override
     public void run() {
         terminated = false;
-        MainView.setStartButtonEnabled(false);
-        MainView.getSimulationView().setStateToInProgress();
-        String[] dbNames = MainView.getEnvironmentsNames();
+        monitor.simulationsStarted();
+        //Without a base seed, every run draws fresh numbers
+        if (seed == null) RandomNumberGenerator.setSeed(System.nanoTime());
         double startTime = Calendar.getInstance().getTimeInMillis();
 
         CloudSim.init(getNumberOfCustomers(), Calendar.getInstance(), false);
         CloudSim.startSimulation();
-        for (String dbName : dbNames) {
+        for (String dbName : environmentsNames) {
             HibernateUtil.setActiveDatabase(dbName + ".cre");
             runAllSimulations();
         }
 
         double finishTime = Calendar.getInstance().getTimeInMillis();
         ElapsedTime elapsedTime = new ElapsedTime(finishTime - startTime);
-        MainView.getSimulationView().setStateToComplete(elapsedTime);
-        MainView.setStartButtonEnabled(true);
+        monitor.simulationsCompleted(elapsedTime);
     }
 
     /** 
@@ -114,60 +235,90 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
      * @since           1.0
      */       
     private void runAllSimulations() {
-        RemovePreviousReports();
-        isMailNotificationEnabled = SettingBusiness.isMailNotificationEnabled();
-        int numberOfSimulations = SettingBusiness.getNumberOfSimulations();
+        if (removePreviousReports) RemovePreviousReports();
+        ExtensionsLoader.reset();
+        SettingBusiness.invalidateSnapshot();
+        SettingsSnapshot settings = SettingBusiness.getSnapshot();
+        isMailNotificationEnabled = settings.isMailNotificationEnabled();
+        ColumnarReportDataStore.setEnabled(settings.isColumnarMetricsEnabled());
+        Database.migrateReportData();
+        int numberOfSimulations = settings.getNumberOfSimulations();
+        if (numbersOfSimulations.containsKey(HibernateUtil.getActiveDatabase())) {
+            numberOfSimulations = numbersOfSimulations.get(HibernateUtil.getActiveDatabase());
+        }
 
-        for (int simulationId = 1; simulationId <= numberOfSimulations; simulationId++) {
+        for (int simulationId = firstSimulationId; simulationId <= numberOfSimulations; simulationId++) {
             SettingBusiness.setCurrentSimulation(simulationId);
-            MainView.getSimulationView().setBarLabel("Simulation " + simulationId + " of " + HibernateUtil.getActiveDatabase() + " is in progress...");
+            if (seed != null) RandomNumberGenerator.setSeed(RandomNumberGenerator.getRepetitionSeed(seed, simulationId));
+            monitor.progressChanged("Simulation " + simulationId + " of " + HibernateUtil.getActiveDatabase() + " is in progress...");
             Log.setOutput(LogIO.getFileOutputStream());
             Log.printLine("CloudReports version 1.1");
             Log.print("Verifying available resources...");
 
             ResetCustomersTimeToSend();
             if (Verification.verifyVMsDeploymentViability()) {
-                runSimulation(simulationId);
+                if (!runSimulation(simulationId)) {
+                    monitor.simulationAborted();
+                    break;
+                }
             } else {
-                Dialog.showErrorMessage(null, "Simulation aborted:\nSome of the virtual machines cannot be deployed by any available host.");
-                MainView.getSimulationView().dispose();
+                monitor.showErrorMessage("Simulation aborted:\nSome of the virtual machines cannot be deployed by any available host.");
+                monitor.simulationAborted();
                 break;
             }
             LogIO.removeTempLogFile();
         }
+        RandomNumberPrefetcher.release();
     }
     
     /** 
      * Runs a round of a simulation.
      * 
+     * @return          <code>false</code> if the simulation could not be set
+     *                  up, in which case the error has already been shown;
+     *                  <code>true</code> otherwise.
      * @since           1.1
      */      
-    private void runSimulation(int simulationId) {
+    private boolean runSimulation(int simulationId) {
         Log.print("OK\n");
         double currentSimulationStartTime = Calendar.getInstance().getTimeInMillis();
         CloudSim.init(getNumberOfCustomers(), Calendar.getInstance(), false);
-        CloudSim.terminateSimulation(SettingBusiness.getTimeToSimulate()*60);
+        CloudSim.terminateSimulation(SettingBusiness.getSnapshot().getTimeToSimulate()*60);
         
-        HashMap<String, PowerDatacenter> datacenters = EntityFactory.createDatacenters();
-        HashMap<String, DatacenterBroker> brokers = EntityFactory.createBrokers();
-        if (datacenters == null || brokers == null) return;
+        EnvironmentSnapshot environment = EnvironmentSnapshot.load();
+        if (environment == null) {
+            monitor.showErrorMessage("Simulation aborted:\nThe environment of " + HibernateUtil.getActiveDatabase() + " could not be read from the database.");
+            return false;
+        }
+
+        HashMap<String, PowerDatacenter> datacenters = EntityFactory.createDatacenters(environment);
+        HashMap<String, DatacenterBroker> brokers = EntityFactory.createBrokers(environment);
+        if (datacenters == null || brokers == null) return false;
         
-        EntityFactory.setUpNetworkLinks(datacenters, brokers);
+        EntityFactory.setUpNetworkLinks(environment, datacenters, brokers);
         try {
             Simulation.dataCollector = new DataCollector(datacenters, brokers);
+            Simulation.hostUtilizationMonitor = new HostUtilizationMonitor(datacenters);
             CloudSim.startSimulation();
 
             Simulation.dataCollector.flushData();
-            MainView.getSimulationView().setBarLabel("Generating report " + simulationId + "...");
+            ReportDataWriter.flush();
+            long failedSamples = ReportDataWriter.takeFailedSamples();
+            if (failedSamples > 0) {
+                monitor.showErrorMessage(failedSamples + " samples of report data could not be written to the database.\n"
+                        + "Report " + simulationId + " may be incomplete.");
+            }
+            monitor.progressChanged("Generating report " + simulationId + "...");
             double currentSimulationFinishTime = Calendar.getInstance().getTimeInMillis();
             ElapsedTime elapsedTime = new ElapsedTime(currentSimulationFinishTime - currentSimulationStartTime);
 
             List<DatacenterBroker> brokersList = Arrays.asList(brokers.values().toArray(new DatacenterBroker[0]));
             List<PowerDatacenter> datacentersList = Arrays.asList(datacenters.values().toArray(new PowerDatacenter[0]));
+            logCloudletStatistics(brokersList);
             Report.generateReport(datacentersList, brokersList, elapsedTime);
 
             if (hasTerminated()) {
-                Dialog.showWarning(MainView.getFrames()[0], "Simulation has been abrubtly terminated.");
+                monitor.showWarning("Simulation has been abrubtly terminated.");
             } else {
                 //Send mail notification
                 if (isMailNotificationEnabled) {
@@ -179,7 +330,7 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
             e.printStackTrace();
             CloudSim.init(getNumberOfCustomers(), Calendar.getInstance(), false);
             CloudSim.startSimulation();
-            Dialog.showWarning(null, "Simulation has been interrupted.\nReports may have been generated with inconsistent data.");
+            monitor.showWarning("Simulation has been interrupted.\nReports may have been generated with inconsistent data.");
 
             //Send mail notification
             if (isMailNotificationEnabled) {
@@ -189,9 +340,36 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
                         "Simulation " + simulationId + " of " + HibernateUtil.getActiveDatabase() + " has failed after " + elapsedTime.toString() + ":\n\n" + e.getMessage());
             }
 
-            MainView.getSimulationView().dispose();
+            monitor.simulationAborted();
             LogIO.removeTempLogFile();
         }
+        return true;
+    }
+
+    /** 
+     * Writes a summary of the cloudlets returned to each broker in the
+     * steady-state workload mode to the simulation log, which is included in
+     * the report.
+     * In this mode, brokers do not keep their cloudlets, so the per-cloudlet
+     * sections of the report are empty and this summary replaces them.
+     * 
+     * @param   brokers     the brokers of the simulation.
+     * @since               1.2
+     */      
+    private static void logCloudletStatistics(List<DatacenterBroker> brokers) {
+        for (DatacenterBroker broker : brokers) {
+            if (!(broker instanceof Broker) || !((Broker) broker).isSteadyStateWorkload()) continue;
+
+            CloudletStatistics statistics = ((Broker) broker).getCloudletStatistics();
+            Log.printLine("Cloudlets of " + broker.getName() + ": "
+                    + statistics.getCount() + " returned, "
+                    + statistics.getSuccessCount() + " successful, "
+                    + statistics.getTotalLength() + " MI in total.");
+            Log.printLine(String.format("Execution time of %s's cloudlets: %.2f average, %.2f minimum, %.2f maximum; "
+                    + "average waiting time: %.2f.",
+                    broker.getName(), statistics.getAverageExecutionTime(), statistics.getMinExecutionTime(),
+                    statistics.getMaxExecutionTime(), statistics.getAverageWaitingTime()));
+        }
     }
 
     /** 
@@ -218,11 +396,11 @@ public class Simulation extends BaseCloudSimObservable implements Runnable {
     }
 
     /** 
-     * Removes reports from previous simulations.
+     * Removes reports from previous simulations of the active environment.
      * 
      * @since   1.1
      */     
-    private void RemovePreviousReports() {                
+    static void RemovePreviousReports() {                
         String baseDirectory = FileIO.getPathOfExecutable();
         File reportsDirectory = new File(baseDirectory + "reports/" + HibernateUtil.getActiveDatabase());
         if(reportsDirectory.exists()) FileIO.deleteDirectory(reportsDirectory);
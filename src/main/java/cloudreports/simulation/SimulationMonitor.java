@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.simulation;
+
+import cloudreports.utils.ElapsedTime;
+
+/**
+ * Receives progress notifications and messages from a running
+ * {@link Simulation}.
+ * It decouples the simulation from the user interface, so simulations can be
+ * run either from the graphical interface or from the command line.
+ *
+ * @see         Simulation
+ * @see         ConsoleSimulationMonitor
+ * @since       1.2
+ */
+public interface SimulationMonitor {
+
+    /**
+     * Notifies that a set of simulations has started.
+     *
+     * @since   1.2
+     */
+    void simulationsStarted();
+
+    /**
+     * Notifies a change in the progress of the simulations.
+     *
+     * @param   message a message describing the current progress.
+     * @since           1.2
+     */
+    void progressChanged(String message);
+
+    /**
+     * Notifies that all simulations have completed.
+     *
+     * @param   elapsedTime the time all simulations took to complete.
+     * @since               1.2
+     */
+    void simulationsCompleted(ElapsedTime elapsedTime);
+
+    /**
+     * Notifies that a simulation has been aborted or interrupted.
+     *
+     * @since   1.2
+     */
+    void simulationAborted();
+
+    /**
+     * Shows an error message.
+     *
+     * @param   message the message to be shown.
+     * @since           1.2
+     */
+    void showErrorMessage(String message);
+
+    /**
+     * Shows a warning message.
+     *
+     * @param   message the message to be shown.
+     * @since           1.2
+     */
+    void showWarning(String message);
+}
@@ -204,6 +204,44 @@ public class FileIO {
         }
     }
     
+    /**
+     * Copies a file, creating the parent directories of the destination
+     * if needed.
+     *
+     * @param   source      the file to be copied.
+     * @param   destination the destination file.
+     * @return              <code>true</code> if the operation was successful;
+     *                      <code>false</code> otherwise.
+     */
+    public static boolean copyFile(File source, File destination) {
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            if (destination.getParentFile() != null) destination.getParentFile().mkdirs();
+            in = new FileInputStream(source);
+            out = new FileOutputStream(destination);
+
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(FileIO.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        finally {
+            try {
+                if(in != null) in.close();
+                if(out != null) out.close();
+            } catch (IOException ex) {
+                Logger.getLogger(FileIO.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
     /**
      * Converts a memory stream into a string.
      * 
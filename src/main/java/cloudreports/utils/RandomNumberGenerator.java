@@ -21,8 +21,10 @@ package cloudreports.utils;
 
 import cloudreports.business.SettingBusiness;
 import cloudreports.dao.SettingDAO;
+import cloudreports.database.HibernateUtil;
 import cloudreports.enums.RandomNumbersFactory;
 import java.util.List;
+import java.util.Random;
 
 /**
  * A helper class that provides utility methods related to random numbers
@@ -32,6 +34,12 @@ import java.util.List;
  */
 public class RandomNumberGenerator {
     
+    /** The pseudo-random generator used by the Java source. */
+    private static Random random = new Random();
+    
+    /** The stream all streams of customers are split from. */
+    private static RandomStream stream = new RandomStream(System.nanoTime());
+    
     /** 
      * Gets a specific amount of random numbers from the random numbers pool.
      * 
@@ -39,8 +47,75 @@ public class RandomNumberGenerator {
      * @since           1.0
      */       
     public static List<Double> getRandomNumbers(int amount) {
-        int source = SettingBusiness.getRandomnessOption();
+        int source = SettingBusiness.getSnapshot().getRandomnessOption();
         return RandomNumbersFactory.getInstance(source).getRandomNumbers(amount);
     }
     
+    /** 
+     * Gets a random number from the configured source, taking pseudo-random
+     * numbers from a given stream.
+     * 
+     * @param   stream  the stream used by the Java source.
+     * @return          a random number in [0, 1).
+     * @see             #getStream(String)
+     * @since           1.2
+     */       
+    public static double getRandomNumber(RandomStream stream) {
+        int source = SettingBusiness.getSnapshot().getRandomnessOption();
+        return RandomNumbersFactory.getInstance(source).getRandomNumber(stream);
+    }
+    
+    /** 
+     * Gets the stream of pseudo-random numbers of a customer in the current
+     * simulation. It is split from the seeded stream by environment, by
+     * repetition and by customer, so it does not depend on the numbers
+     * taken by other customers, repetitions or environments.
+     * 
+     * @param   customerName    the name of the customer.
+     * @return                  the stream of the customer.
+     * @since                   1.2
+     */       
+    public static RandomStream getStream(String customerName) {
+        return stream.split(HibernateUtil.getActiveDatabase())
+                     .split(SettingBusiness.getCurrentSimulation())
+                     .split(customerName);
+    }
+    
+    /** 
+     * Gets the pseudo-random generator used by the Java source.
+     * 
+     * @return  the pseudo-random generator.
+     * @since   1.2
+     */       
+    public static Random getRandom() {
+        return random;
+    }
+    
+    /** 
+     * Reseeds the pseudo-random generator used by the Java source, so that
+     * the following numbers can be reproduced.
+     * 
+     * @param   seed    the new seed.
+     * @since           1.2
+     */       
+    public static void setSeed(long seed) {
+        random = new Random(seed);
+        stream = new RandomStream(seed);
+    }
+    
+    /** 
+     * Derives the seed of a specific repetition of a simulation from a
+     * base seed.
+     * The result only depends on its arguments, so a repetition gets the
+     * same seed regardless of the order or the process it is run in.
+     * 
+     * @param   baseSeed        the base seed of the simulations.
+     * @param   simulationId    the identification number of the simulation.
+     * @return                  the seed of the repetition.
+     * @since                   1.2
+     */       
+    public static long getRepetitionSeed(long baseSeed, int simulationId) {
+        return RandomStream.mix(baseSeed + simulationId * RandomStream.GOLDEN_GAMMA);
+    }
+    
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.utils;
+
+/**
+ * A seeded stream of pseudo-random numbers based on the SplitMix64
+ * generator, the same algorithm used by <code>SplittableRandom</code>.
+ * Numbers are produced as primitives, without any allocation, and the same
+ * seed always produces the same sequence.
+ * <p>
+ * A stream can be split into independent child streams identified by keys.
+ * A child stream only depends on the seed of its parent and its key, so it
+ * is the same regardless of how many numbers were taken from the parent or
+ * from other children.
+ *
+ * @see         RandomNumberGenerator#getStream(String)
+ * @since       1.2
+ */
+public class RandomStream {
+
+    /** The increment of the generator, an odd constant. */
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** The offset basis of the 64-bit FNV-1a hash. */
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+    /** The prime of the 64-bit FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** The scale used to turn 53 random bits into a double in [0, 1). */
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    /** The seed the stream was created with. */
+    private final long seed;
+
+    /** The current state of the generator. */
+    private long state;
+
+    /**
+     * Creates a stream with a given seed.
+     *
+     * @param   seed    the seed of the stream.
+     * @since           1.2
+     */
+    public RandomStream(long seed) {
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    /**
+     * Gets the seed the stream was created with.
+     *
+     * @return  the seed of the stream.
+     * @since   1.2
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the next pseudo-random long value of the stream.
+     *
+     * @return  a pseudo-random long value.
+     * @since   1.2
+     */
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * Gets the next pseudo-random double value of the stream, uniformly
+     * distributed in [0, 1).
+     *
+     * @return  a pseudo-random double value.
+     * @since   1.2
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Gets an independent child stream identified by a numeric key.
+     *
+     * @param   key     the key of the child stream.
+     * @return          the child stream.
+     * @since           1.2
+     */
+    public RandomStream split(long key) {
+        return new RandomStream(mix(seed ^ mix(key + GOLDEN_GAMMA)));
+    }
+
+    /**
+     * Gets an independent child stream identified by a name.
+     * The key of the child stream is the 64-bit FNV-1a hash of the
+     * characters of the name, so names whose <code>String</code> hash codes
+     * collide still get different streams.
+     *
+     * @param   name    the name of the child stream.
+     * @return          the child stream.
+     * @since           1.2
+     */
+    public RandomStream split(String name) {
+        long key = FNV_OFFSET_BASIS;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            key = (key ^ (c & 0xFF)) * FNV_PRIME;
+            key = (key ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return split(key);
+    }
+
+    /**
+     * Mixes the bits of a value with the finalizer of SplitMix64.
+     *
+     * @param   z   the value to be mixed.
+     * @return      the mixed value.
+     * @since       1.2
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.utils;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * A compact series of samples sorted by time, backed by primitive arrays.
+ * It takes 16 bytes per sample, against the several boxed objects per
+ * sample of a <code>TreeMap&lt;Double, Double&gt;</code>, and can be
+ * down-sampled to a given number of points for charts.
+ *
+ * @since       1.2
+ */
+public class TimeSeries {
+
+    /** The initial capacity of a series, in samples. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The instants of time of the samples, in ascending order. */
+    private double[] times;
+
+    /** The values of the samples. */
+    private double[] values;
+
+    /** The number of samples in the series. */
+    private int size;
+
+    /**
+     * Creates an empty series.
+     *
+     * @since   1.2
+     */
+    public TimeSeries() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty series with a given initial capacity.
+     *
+     * @param   capacity    the initial capacity, in samples.
+     * @since               1.2
+     */
+    public TimeSeries(int capacity) {
+        times = new double[Math.max(1, capacity)];
+        values = new double[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds a sample to the series.
+     * Samples are expected in ascending order of time; a sample with the
+     * same time as the last one replaces it, and an older sample is
+     * inserted at its position.
+     *
+     * @param   time    the instant of time of the sample.
+     * @param   value   the value of the sample.
+     * @since           1.2
+     */
+    public void add(double time, double value) {
+        if (size > 0 && time <= times[size - 1]) {
+            int index = Arrays.binarySearch(times, 0, size, time);
+            if (index >= 0) {
+                values[index] = value;
+                return;
+            }
+            index = -index - 1;
+            ensureCapacity(size + 1);
+            System.arraycopy(times, index, times, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            times[index] = time;
+            values[index] = value;
+            size++;
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        times[size] = time;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Gets the number of samples in the series.
+     *
+     * @return  the number of samples.
+     * @since   1.2
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the instant of time of a sample.
+     *
+     * @param   index   the index of the sample.
+     * @return          the instant of time of the sample.
+     * @since           1.2
+     */
+    public double getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Gets the value of a sample.
+     *
+     * @param   index   the index of the sample.
+     * @return          the value of the sample.
+     * @since           1.2
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Down-samples the series to a given number of points using the
+     * Largest-Triangle-Three-Buckets algorithm, which keeps the visual shape
+     * of the series, including its peaks. The first and last samples are
+     * always kept.
+     *
+     * @param   threshold   the maximum number of points of the result.
+     * @return              the down-sampled series, or this series if it
+     *                      already has at most <code>threshold</code> points.
+     * @since               1.2
+     */
+    public TimeSeries downsample(int threshold) {
+        if (threshold >= size || threshold < 3) return this;
+
+        TimeSeries sampled = new TimeSeries(threshold);
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        sampled.add(times[a], values[a]);
+
+        for (int i = 0; i < threshold - 2; i++) {
+            int nextStart = (int) Math.floor((i + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * bucketSize) + 1, size);
+            double averageTime = 0;
+            double averageValue = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                averageTime += times[j];
+                averageValue += values[j];
+            }
+            int nextLength = nextEnd - nextStart;
+            if (nextLength > 0) {
+                averageTime /= nextLength;
+                averageValue /= nextLength;
+            } else {
+                averageTime = times[size - 1];
+                averageValue = values[size - 1];
+            }
+
+            int start = (int) Math.floor(i * bucketSize) + 1;
+            int end = (int) Math.floor((i + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int selected = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((times[a] - averageTime) * (values[j] - values[a])
+                                     - (times[a] - times[j]) * (averageValue - values[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = j;
+                }
+            }
+
+            sampled.add(times[selected], values[selected]);
+            a = selected;
+        }
+
+        sampled.add(times[size - 1], values[size - 1]);
+        return sampled;
+    }
+
+    /**
+     * Converts the series to a map with values of time as keys.
+     *
+     * @return  a map with the samples of the series.
+     * @since   1.2
+     */
+    public TreeMap<Double, Double> toTreeMap() {
+        TreeMap<Double, Double> map = new TreeMap<Double, Double>();
+        for (int i = 0; i < size; i++) {
+            map.put(times[i], values[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Grows the arrays of the series, if needed.
+     *
+     * @param   capacity    the minimum capacity, in samples.
+     * @since               1.2
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= times.length) return;
+        int newCapacity = Math.max(capacity, times.length * 2);
+        times = Arrays.copyOf(times, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+    }
+}
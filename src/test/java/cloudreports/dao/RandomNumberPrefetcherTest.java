@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.dao;
+
+import cloudreports.database.HibernateUtil;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import qrbg.ServiceDeniedException;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link RandomNumberPrefetcher} with an in-memory pool and a
+ * {@link PseudoRandomByteSource}.
+ *
+ * @since       1.2
+ */
+public class RandomNumberPrefetcherTest {
+
+    /** The in-memory pools, by database. */
+    private Map<String, List<Double>> pools;
+
+    @Before
+    public void setUp() throws Exception {
+        pools = new HashMap<String, List<Double>>();
+        RandomNumberPrefetcher.setRandomNumberDAO(new InMemoryRandomNumberDAO());
+        setActiveDatabase("first");
+    }
+
+    @After
+    public void tearDown() {
+        RandomNumberPrefetcher.setByteSource(null);
+        RandomNumberPrefetcher.setRandomNumberDAO(new RandomNumberDAO());
+    }
+
+    @Test
+    public void bufferIsToppedUpBelowLowWatermark() throws Exception {
+        CountingByteSource source = new CountingByteSource(new PseudoRandomByteSource(42));
+        RandomNumberPrefetcher.setByteSource(source);
+
+        double number = RandomNumberPrefetcher.next();
+        assertTrue(number > 0 && number <= 1);
+        int requests = source.getRequests();
+        assertTrue(requests > 0);
+
+        //Take numbers until the buffer is under the low watermark, but not empty
+        for (int i = 0; i < 2000; i++) {
+            RandomNumberPrefetcher.next();
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (source.getRequests() == requests && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(source.getRequests() > requests);
+    }
+
+    @Test
+    public void failuresAreReportedToConsumers() throws Exception {
+        final IOException failure = new IOException("Unreachable.");
+        RandomNumberPrefetcher.setByteSource(new RandomByteSource() {
+            @Override
+            public void getBytes(byte[] buffer, int count) throws IOException {
+                throw failure;
+            }
+        });
+
+        try {
+            RandomNumberPrefetcher.next();
+            fail("The failure of the byte source was not reported.");
+        } catch (IOException ex) {
+            assertSame(failure, ex);
+        }
+
+        //The next request is served once the source is working again
+        RandomNumberPrefetcher.setByteSource(new PseudoRandomByteSource(42));
+        assertTrue(RandomNumberPrefetcher.next() > 0);
+    }
+
+    @Test
+    public void releaseWritesUnusedNumbersBack() throws Exception {
+        List<Double> pool = createPool("first", 100);
+        List<Double> expected = new ArrayList<Double>(pool.subList(1, pool.size()));
+
+        assertEquals(pool.get(0), RandomNumberPrefetcher.next(), 0);
+        assertTrue(pools.get("first").isEmpty());
+
+        RandomNumberPrefetcher.release();
+        assertEquals(expected, pools.get("first"));
+
+        //The released numbers are served again, in the same order
+        assertEquals(expected.get(0), RandomNumberPrefetcher.next(), 0);
+    }
+
+    @Test
+    public void unusedNumbersAreWrittenBackWhenTheDatabaseChanges() throws Exception {
+        List<Double> firstPool = createPool("first", 100);
+        List<Double> expected = new ArrayList<Double>(firstPool.subList(1, firstPool.size()));
+        List<Double> secondPool = createPool("second", 10);
+        double secondNumber = secondPool.get(0);
+
+        RandomNumberPrefetcher.next();
+        setActiveDatabase("second");
+        assertEquals(secondNumber, RandomNumberPrefetcher.next(), 0);
+        assertEquals(expected, pools.get("first"));
+    }
+
+    private List<Double> createPool(String database, int size) {
+        List<Double> pool = new ArrayList<Double>();
+        for (int i = 1; i <= size; i++) {
+            pool.add(i / (size + 1.0));
+        }
+        pools.put(database, new ArrayList<Double>(pool));
+        return pool;
+    }
+
+    private static void setActiveDatabase(String database) throws Exception {
+        //Set the name only, without building a session factory
+        Field field = HibernateUtil.class.getDeclaredField("activeDatabase");
+        field.setAccessible(true);
+        field.set(null, database + ".cre");
+    }
+
+    /**
+     * A pool kept in memory instead of a database.
+     */
+    private class InMemoryRandomNumberDAO extends RandomNumberDAO {
+
+        @Override
+        public double[] takeNumbersFromPool(int amount) {
+            List<Double> pool = getPool(HibernateUtil.getActiveDatabase());
+            double[] numbers = new double[Math.min(amount, pool.size())];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = pool.remove(0);
+            }
+            return numbers;
+        }
+
+        @Override
+        public void insertNumbersInPool(String database, double[] numbers) {
+            List<Double> pool = getPool(database);
+            for (double number : numbers) {
+                pool.add(number);
+            }
+        }
+
+        private List<Double> getPool(String database) {
+            List<Double> pool = pools.get(database);
+            if (pool == null) {
+                pool = new ArrayList<Double>();
+                pools.put(database, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * A byte source that counts its requests.
+     */
+    private static class CountingByteSource implements RandomByteSource {
+
+        private final RandomByteSource source;
+
+        private int requests;
+
+        CountingByteSource(RandomByteSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public synchronized void getBytes(byte[] buffer, int count) throws IOException, ServiceDeniedException {
+            requests++;
+            source.getBytes(buffer, count);
+        }
+
+        synchronized int getRequests() {
+            return requests;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.brokers;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the order in which {@link VmLoadHeap} yields virtual machines:
+ * those without cloudlets first, then the least loaded ones, with the
+ * lowest id on ties, as {@link ActiveVmLoadBalancer} expects.
+ *
+ * @since       1.2
+ */
+public class VmLoadHeapTest {
+
+    /** The largest virtual machine id used by the tests. */
+    private static final int MAX_VM_ID = 100;
+
+    @Test
+    public void emptyHeapHasNoVm() {
+        VmLoadHeap heap = new VmLoadHeap();
+        assertEquals(0, heap.size());
+        assertEquals(-1, heap.peek());
+        assertFalse(heap.contains(0));
+    }
+
+    @Test
+    public void unallocatedVmsComeFirst() {
+        VmLoadHeap heap = new VmLoadHeap();
+        heap.add(3);
+        heap.add(1);
+        heap.add(2);
+        assertEquals(1, heap.peek());
+
+        heap.increment(1);
+        heap.decrement(1);
+        assertEquals(2, heap.peek());
+
+        heap.increment(2);
+        heap.increment(3);
+        assertEquals(1, heap.peek());
+    }
+
+    @Test
+    public void idsBeyondTheInitialCapacityAreAdded() {
+        VmLoadHeap heap = new VmLoadHeap();
+        heap.increment(1000);
+        assertTrue(heap.contains(1000));
+        assertEquals(1000, heap.peek());
+        assertEquals(1, heap.size());
+    }
+
+    @Test
+    public void peekMatchesLinearScan() {
+        Random random = new Random(42);
+        VmLoadHeap heap = new VmLoadHeap();
+        int[] counts = new int[MAX_VM_ID];
+        boolean[] allocated = new boolean[MAX_VM_ID];
+        boolean[] present = new boolean[MAX_VM_ID];
+
+        for (int step = 0; step < 20000; step++) {
+            int vmId = random.nextInt(MAX_VM_ID);
+            switch (random.nextInt(3)) {
+                case 0:
+                    heap.add(vmId);
+                    present[vmId] = true;
+                    break;
+                case 1:
+                    heap.increment(vmId);
+                    present[vmId] = true;
+                    allocated[vmId] = true;
+                    counts[vmId]++;
+                    break;
+                default:
+                    heap.decrement(vmId);
+                    if (present[vmId] && allocated[vmId]) counts[vmId]--;
+                    break;
+            }
+
+            assertEquals("step " + step, linearScan(counts, allocated, present), heap.peek());
+        }
+    }
+
+    /**
+     * Finds the least loaded virtual machine the way
+     * {@link ActiveVmLoadBalancer} did before the heap: the first one that
+     * never received a cloudlet or else the one with the fewest active
+     * cloudlets, with the lowest id on ties.
+     */
+    private static int linearScan(int[] counts, boolean[] allocated, boolean[] present) {
+        int selected = -1;
+        for (int vmId = 0; vmId < counts.length; vmId++) {
+            if (!present[vmId]) continue;
+            if (!allocated[vmId]) return vmId;
+            if (selected == -1 || counts[vmId] < counts[selected]) selected = vmId;
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link HostCapacityIndex} yields exactly the hosts with enough
+ * free MIPS and RAM, while virtual machines are allocated to them.
+ *
+ * @since       1.2
+ */
+public class HostCapacityIndexTest {
+
+    /** The factory of hosts and virtual machines. */
+    private HostFixtures fixtures = new HostFixtures();
+
+    @Test
+    public void emptyHostListHasNoCandidate() {
+        HostCapacityIndex index = new HostCapacityIndex(new ArrayList<PowerHost>());
+        assertEquals(-1, index.nextCandidate(0, fixtures.createVm(100, 128)));
+    }
+
+    @Test
+    public void candidatesMatchLinearScan() {
+        Random random = new Random(42);
+        List<PowerHost> hosts = new ArrayList<PowerHost>();
+        for (int i = 0; i < 37; i++) {
+            hosts.add(HostFixtures.createHost(i, 1000 + 500 * random.nextInt(6), 1024 * (1 + random.nextInt(8))));
+        }
+        HostCapacityIndex index = new HostCapacityIndex(hosts);
+
+        for (int step = 0; step < 500; step++) {
+            Vm vm = fixtures.createVm(100 * (1 + random.nextInt(20)), 256 * (1 + random.nextInt(12)));
+            List<Integer> candidates = getCandidates(index, hosts, vm);
+            assertEquals("step " + step, linearScan(hosts, vm), candidates);
+
+            //Allocate the vm to a random candidate, as the allocation policy would
+            if (!candidates.isEmpty()) {
+                PowerHost host = hosts.get(candidates.get(random.nextInt(candidates.size())));
+                assertTrue(host.vmCreate(vm));
+                index.update(host);
+            }
+        }
+    }
+
+    @Test
+    public void invalidatedIndexIsRebuilt() {
+        List<PowerHost> hosts = new ArrayList<PowerHost>();
+        hosts.add(HostFixtures.createHost(0, 1000, 1024));
+        hosts.add(HostFixtures.createHost(1, 2000, 1024));
+        HostCapacityIndex index = new HostCapacityIndex(hosts);
+        Vm vm = fixtures.createVm(1500, 512);
+        assertEquals(1, index.nextCandidate(0, vm));
+
+        //Changes made without update are only seen after invalidation
+        assertTrue(hosts.get(1).vmCreate(fixtures.createVm(1000, 128)));
+        index.invalidate();
+        assertEquals(-1, index.nextCandidate(0, vm));
+    }
+
+    /**
+     * Gets all positions the index yields for a virtual machine.
+     */
+    private static List<Integer> getCandidates(HostCapacityIndex index, List<PowerHost> hosts, Vm vm) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        int position = index.nextCandidate(0, vm);
+        while (position != -1 && position < hosts.size()) {
+            candidates.add(position);
+            position = index.nextCandidate(position + 1, vm);
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets the positions of the hosts with enough free MIPS and RAM for a
+     * virtual machine, scanning all hosts.
+     */
+    private static List<Integer> linearScan(List<PowerHost> hosts, Vm vm) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int i = 0; i < hosts.size(); i++) {
+            PowerHost host = hosts.get(i);
+            if (host.getVmScheduler().getAvailableMips() >= vm.getCurrentRequestedTotalMips()
+                    && host.getRamProvisioner().getAvailableRam() >= vm.getCurrentRequestedRam()) {
+                candidates.add(i);
+            }
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.VmSchedulerTimeShared;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.power.models.PowerModelLinear;
+import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+
+/**
+ * Creates the hosts and virtual machines used by the allocation policy
+ * tests, numbering virtual machines in creation order.
+ *
+ * @since       1.2
+ */
+class HostFixtures {
+
+    /** The id of the next created virtual machine. */
+    private int nextVmId;
+
+    /**
+     * Creates a host with a single processing element.
+     *
+     * @param   id      the id of the host.
+     * @param   mips    the MIPS of the host.
+     * @param   ram     the RAM of the host.
+     * @return          the host.
+     */
+    static PowerHost createHost(int id, double mips, int ram) {
+        List<Pe> peList = new ArrayList<Pe>();
+        peList.add(new Pe(0, new PeProvisionerSimple(mips)));
+        return new PowerHost(id, new RamProvisionerSimple(ram), new BwProvisionerSimple(100000),
+                1000000, peList, new VmSchedulerTimeShared(peList), new PowerModelLinear(250, 70));
+    }
+
+    /**
+     * Creates a virtual machine with a single processing element.
+     *
+     * @param   mips    the MIPS of the virtual machine.
+     * @param   ram     the RAM of the virtual machine.
+     * @return          the virtual machine.
+     */
+    Vm createVm(double mips, int ram) {
+        return new Vm(nextVmId++, 0, mips, 1, ram, 100, 1000, "Xen", new CloudletSchedulerTimeShared());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+import cloudreports.models.Migration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the placement strategies and the resource ledger of
+ * {@link MigrationPlanner}.
+ *
+ * @since       1.2
+ */
+public class MigrationPlannerTest {
+
+    /** The upper utilization threshold of the target hosts. */
+    private static final double THRESHOLD = 0.9;
+
+    /** The factory of hosts and virtual machines. */
+    private HostFixtures fixtures = new HostFixtures();
+
+    @Test
+    public void firstFitTakesTheFirstHostThatFits() {
+        assertEquals(0, distributeOneVm(PlacementStrategy.FIRST_FIT));
+    }
+
+    @Test
+    public void bestFitDecreasingTakesTheHostWithTheLeastFreeMips() {
+        assertEquals(1, distributeOneVm(PlacementStrategy.BEST_FIT_DECREASING));
+    }
+
+    @Test
+    public void worstFitTakesTheHostWithTheMostFreeMips() {
+        assertEquals(2, distributeOneVm(PlacementStrategy.WORST_FIT));
+    }
+
+    @Test
+    public void bestFitDecreasingPlacesTheLargestVmFirst() {
+        PowerHost source = createHost(10, 4000, 500, 1500);
+        List<PowerHost> targets = Arrays.asList(createHost(0, 4000), createHost(1, 2000));
+
+        List<Migration> firstFit = new ArrayList<Migration>();
+        assertTrue(createPlanner(targets, PlacementStrategy.FIRST_FIT).consolidate(firstFit, source));
+        assertEquals(0, firstFit.get(0).getTargetHost().getId());
+        assertEquals(0, firstFit.get(1).getTargetHost().getId());
+
+        List<Migration> bestFit = new ArrayList<Migration>();
+        assertTrue(createPlanner(targets, PlacementStrategy.BEST_FIT_DECREASING).consolidate(bestFit, source));
+        assertEquals(1500, bestFit.get(0).getVm().getMips(), 0);
+        assertEquals(1, bestFit.get(0).getTargetHost().getId());
+        assertEquals(0, bestFit.get(1).getTargetHost().getId());
+    }
+
+    @Test
+    public void firstFitPlansEverySourceAgainstTheCurrentTargets() {
+        MigrationPlanner planner = createPlanner(Arrays.asList(createHost(0, 1000)), PlacementStrategy.FIRST_FIT);
+        List<Migration> migrationList = new ArrayList<Migration>();
+
+        assertTrue(planner.consolidate(migrationList, createHost(10, 1000, 600)));
+        assertTrue(planner.consolidate(migrationList, createHost(11, 1000, 600)));
+        assertEquals(2, migrationList.size());
+    }
+
+    @Test
+    public void successfulConsolidationsKeepTheirTargetsBooked() {
+        for (PlacementStrategy strategy : PlacementStrategy.values()) {
+            if (!strategy.keepsPlans()) continue;
+            MigrationPlanner planner = createPlanner(Arrays.asList(createHost(0, 1000)), strategy);
+            List<Migration> migrationList = new ArrayList<Migration>();
+
+            assertTrue(strategy.name(), planner.consolidate(migrationList, createHost(10, 1000, 600)));
+            assertFalse(strategy.name(), planner.consolidate(migrationList, createHost(11, 1000, 600)));
+            assertEquals(strategy.name(), 1, migrationList.size());
+        }
+    }
+
+    @Test
+    public void failedConsolidationsAreRolledBack() {
+        for (PlacementStrategy strategy : PlacementStrategy.values()) {
+            MigrationPlanner planner = createPlanner(Arrays.asList(createHost(0, 1000)), strategy);
+            List<Migration> migrationList = new ArrayList<Migration>();
+
+            assertFalse(strategy.name(), planner.consolidate(migrationList, createHost(10, 2000, 600, 600)));
+            assertTrue(migrationList.isEmpty());
+            assertTrue(strategy.name(), planner.consolidate(migrationList, createHost(11, 1000, 600)));
+            assertEquals(strategy.name(), 1, migrationList.size());
+        }
+    }
+
+    @Test
+    public void hostsReceivingMigrationsAreNotConsolidated() {
+        PowerHost target = createHost(0, 1000, 100);
+        MigrationPlanner planner = createPlanner(Arrays.asList(target, createHost(1, 1000)),
+                PlacementStrategy.FIRST_FIT_DECREASING);
+        List<Migration> migrationList = new ArrayList<Migration>();
+
+        assertTrue(planner.consolidate(migrationList, createHost(10, 1000, 600)));
+        assertEquals(target, migrationList.get(0).getTargetHost());
+        assertFalse(planner.consolidate(migrationList, target));
+        assertEquals(1, migrationList.size());
+    }
+
+    @Test
+    public void reservedTargetsAreBooked() {
+        PowerHost target = createHost(0, 1000);
+        MigrationPlanner planner = createPlanner(Arrays.asList(target), PlacementStrategy.FIRST_FIT_DECREASING);
+        PowerHost overusedHost = createHost(10, 1000, 600);
+        List<Migration> migrationList = new ArrayList<Migration>();
+        migrationList.add(createMigration(target, overusedHost, overusedHost.getVmList().get(0)));
+
+        planner.reserve(migrationList);
+        assertFalse(planner.consolidate(migrationList, overusedHost));
+        assertFalse(planner.consolidate(migrationList, createHost(11, 1000, 600)));
+        assertEquals(1, migrationList.size());
+    }
+
+    /**
+     * Distributes one virtual machine of 500 MIPS to three targets of
+     * 2000, 1000 and 4000 MIPS.
+     *
+     * @param   strategy    the placement strategy.
+     * @return              the id of the chosen target.
+     */
+    private int distributeOneVm(PlacementStrategy strategy) {
+        List<PowerHost> targets = Arrays.asList(createHost(0, 2000), createHost(1, 1000), createHost(2, 4000));
+        List<Migration> migrationList = new ArrayList<Migration>();
+
+        createPlanner(targets, strategy).distribute(migrationList, createHost(10, 1000, 500));
+
+        assertEquals(1, migrationList.size());
+        return migrationList.get(0).getTargetHost().getId();
+    }
+
+    /**
+     * Creates a planner that does not read the current simulation from the
+     * database.
+     */
+    private MigrationPlanner createPlanner(List<PowerHost> targets, PlacementStrategy strategy) {
+        return new MigrationPlanner(null, targets, THRESHOLD, strategy) {
+            @Override
+            Migration createMigration(PowerHost targetHost, PowerHost sourceHost, Vm vm) {
+                return MigrationPlannerTest.createMigration(targetHost, sourceHost, vm);
+            }
+        };
+    }
+
+    private static Migration createMigration(PowerHost targetHost, PowerHost sourceHost, Vm vm) {
+        Migration migration = new Migration();
+        migration.setTargetHost(targetHost);
+        migration.setSourceHost(sourceHost);
+        migration.setVm(vm);
+        return migration;
+    }
+
+    /**
+     * Creates a host with one processing element and virtual machines of
+     * given MIPS.
+     */
+    private PowerHost createHost(int id, double mips, double... vmsMips) {
+        PowerHost host = HostFixtures.createHost(id, mips, 8192);
+        for (double vmMips : vmsMips) {
+            assertTrue(host.vmCreate(fixtures.createVm(vmMips, 512)));
+        }
+        return host;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.extensions.vmallocationpolicies;
+
+import cloudreports.models.Migration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the "Single threshold" policy, which places migrations with
+ * {@link PlacementStrategy#FIRST_FIT}, plans the same migrations as the
+ * distribution and consolidation it had before {@link MigrationPlanner}.
+ *
+ * @since       1.2
+ */
+public class VmAllocationPolicySingleThresholdTest {
+
+    /** The upper utilization threshold of the hosts. */
+    private static final double THRESHOLD = 0.8;
+
+    @Test
+    public void firstFitPlansTheMigrationsItAlwaysPlanned() {
+        Random random = new Random(42);
+        int plannedMigrations = 0;
+
+        for (int round = 0; round < 200; round++) {
+            HostFixtures fixtures = new HostFixtures();
+            List<PowerHost> hosts = new ArrayList<PowerHost>();
+            List<Vm> vms = new ArrayList<Vm>();
+            int numOfHosts = 2 + random.nextInt(10);
+            for (int i = 0; i < numOfHosts; i++) {
+                hosts.add(HostFixtures.createHost(i, 1000 * (1 + random.nextInt(4)), 4096));
+            }
+            for (int i = 0; i < 3 * numOfHosts; i++) {
+                Vm vm = fixtures.createVm(100 * (1 + random.nextInt(10)), 256 * (1 + random.nextInt(4)));
+                PowerHost host = hosts.get(random.nextInt(numOfHosts));
+                if (host.isSuitableForVm(vm) && host.vmCreate(vm)) vms.add(vm);
+            }
+
+            VmAllocationPolicySingleThreshold policy = createPolicy(hosts);
+            List<Migration> expected = planAsBefore(policy, vms);
+            List<Migration> actual = policy.getListOfMigrationsToBeExecuted(vms);
+            assertEquals("round " + round, describe(expected), describe(actual));
+            plannedMigrations += actual.size();
+        }
+
+        assertTrue(plannedMigrations > 0);
+    }
+
+    /**
+     * Creates a "Single threshold" policy whose migrations do not read the
+     * current simulation from the database and whose overused hosts are
+     * found from the current utilization, without a utilization monitor.
+     */
+    private static VmAllocationPolicySingleThreshold createPolicy(List<PowerHost> hosts) {
+        return new VmAllocationPolicySingleThreshold(hosts, THRESHOLD) {
+            @Override
+            public List<PowerHost> getOverusedHosts() {
+                return getHosts(this, true);
+            }
+
+            @Override
+            public List<PowerHost> getNotOverusedHosts() {
+                return getHosts(this, false);
+            }
+
+            @Override
+            MigrationPlanner createPlanner(List<PowerHost> targetHosts, double upperUtilizationThreshold) {
+                return new MigrationPlanner(this, targetHosts, upperUtilizationThreshold, getPlacementStrategy()) {
+                    @Override
+                    Migration createMigration(PowerHost targetHost, PowerHost sourceHost, Vm vm) {
+                        return VmAllocationPolicySingleThresholdTest.createMigration(targetHost, sourceHost, vm);
+                    }
+                };
+            }
+        };
+    }
+
+    private static List<PowerHost> getHosts(VmAllocationPolicySingleThreshold policy, boolean overused) {
+        List<PowerHost> hosts = new ArrayList<PowerHost>();
+        for (PowerHost host : policy.<PowerHost>getHostList()) {
+            boolean isOverused = VmAllocationPolicySingleThreshold.getHostCpuUtilization(host) / host.getTotalMips() >= THRESHOLD
+                    || VmAllocationPolicySingleThreshold.getHostRamUtilization(host) / host.getRam() >= THRESHOLD;
+            if (isOverused == overused) hosts.add(host);
+        }
+        return hosts;
+    }
+
+    private static Migration createMigration(PowerHost targetHost, PowerHost sourceHost, Vm vm) {
+        Migration migration = new Migration();
+        migration.setTargetHost(targetHost);
+        migration.setSourceHost(sourceHost);
+        migration.setVm(vm);
+        return migration;
+    }
+
+    private static List<String> describe(List<Migration> migrationList) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Migration migration : migrationList) {
+            descriptions.add(migration.getDescription() + ": vm " + migration.getVm().getId()
+                    + " from " + migration.getSourceHost().getId() + " to " + migration.getTargetHost().getId());
+        }
+        return descriptions;
+    }
+
+    /**
+     * Plans the migrations of a policy the way
+     * {@link VmAllocationPolicySingleThreshold#getListOfMigrationsToBeExecuted(List)}
+     * did before the planner: every source host is planned against a fresh
+     * map of the used resources of the targets.
+     */
+    private static List<Migration> planAsBefore(VmAllocationPolicySingleThreshold policy, List<Vm> vmList) {
+        List<Migration> migrationList = new ArrayList<Migration>();
+        if (vmList.isEmpty()) return migrationList;
+
+        List<PowerHost> overusedHosts = policy.getOverusedHosts();
+        List<PowerHost> notOverusedHosts = policy.getNotOverusedHosts();
+        if (!overusedHosts.isEmpty() && !notOverusedHosts.isEmpty()) {
+            policy.sortByPowerConsumption(overusedHosts);
+            for (PowerHost host : overusedHosts) {
+                distributeAsBefore(migrationList, host, notOverusedHosts);
+            }
+            for (Migration migration : migrationList) {
+                migration.setDescription("Distribution");
+            }
+        }
+
+        List<PowerHost> activeHosts = policy.getActiveHosts();
+        List<Integer> hostsToBeTurnedOffIds = new ArrayList<Integer>();
+        for (PowerHost sourceHost : activeHosts) {
+            List<Migration> newMigrationList = new ArrayList<Migration>();
+            consolidateAsBefore(newMigrationList, sourceHost, activeHosts, hostsToBeTurnedOffIds);
+            migrationList.addAll(newMigrationList);
+            hostsToBeTurnedOffIds.add(sourceHost.getId());
+        }
+        for (Migration migration : migrationList) {
+            if (migration.getDescription() == null) migration.setDescription("Consolidation");
+        }
+        return migrationList;
+    }
+
+    private static void distributeAsBefore(List<Migration> migrationList, PowerHost sourceHost, List<PowerHost> targetHosts) {
+        Map<Integer, double[]> resources = getResources(targetHosts);
+        double cpuUtilization = VmAllocationPolicySingleThreshold.getHostCpuUtilization(sourceHost);
+        double ramUtilization = VmAllocationPolicySingleThreshold.getHostRamUtilization(sourceHost);
+
+        VMS_LOOP:
+        for (Vm vm : sourceHost.getVmList()) {
+            if (vm.isInMigration()) continue;
+
+            for (PowerHost targetHost : targetHosts) {
+                if (book(resources.get(targetHost.getId()), targetHost, vm)) {
+                    ramUtilization -= vm.getRam();
+                    cpuUtilization -= sourceHost.getTotalAllocatedMipsForVm(vm);
+                    migrationList.add(createMigration(targetHost, sourceHost, vm));
+
+                    if ((ramUtilization / sourceHost.getRam()) < THRESHOLD
+                            && (cpuUtilization / sourceHost.getTotalMips()) < THRESHOLD) {
+                        break VMS_LOOP;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void consolidateAsBefore(List<Migration> migrationList, PowerHost sourceHost,
+                                            List<PowerHost> targetHosts, List<Integer> hostsToBeTurnedOffIds) {
+        Map<Integer, double[]> resources = getResources(targetHosts);
+        double cpuUtilization = VmAllocationPolicySingleThreshold.getHostCpuUtilization(sourceHost);
+        double ramUtilization = VmAllocationPolicySingleThreshold.getHostRamUtilization(sourceHost);
+
+        for (Vm vm : sourceHost.getVmList()) {
+            if (vm.isInMigration()) continue;
+
+            for (PowerHost targetHost : targetHosts) {
+                if (targetHost.getId() == sourceHost.getId() || hostsToBeTurnedOffIds.contains(targetHost.getId())) {
+                    continue;
+                }
+                if (book(resources.get(targetHost.getId()), targetHost, vm)) {
+                    ramUtilization -= vm.getRam();
+                    cpuUtilization -= sourceHost.getTotalAllocatedMipsForVm(vm);
+                    migrationList.add(createMigration(targetHost, sourceHost, vm));
+                    break;
+                }
+            }
+        }
+
+        if (ramUtilization > 0 || cpuUtilization > 0) {
+            migrationList.clear();
+        }
+    }
+
+    /**
+     * Gets the used CPU and RAM of each target host, by host id.
+     */
+    private static Map<Integer, double[]> getResources(List<PowerHost> targetHosts) {
+        Map<Integer, double[]> resources = new HashMap<Integer, double[]>();
+        for (PowerHost host : targetHosts) {
+            resources.put(host.getId(), new double[] {VmAllocationPolicySingleThreshold.getHostCpuUtilization(host),
+                                                      VmAllocationPolicySingleThreshold.getHostRamUtilization(host)});
+        }
+        return resources;
+    }
+
+    /**
+     * Adds a virtual machine to the used resources of a target host, if it
+     * stays under the threshold.
+     */
+    private static boolean book(double[] used, PowerHost targetHost, Vm vm) {
+        double vmTotalMips = vm.getNumberOfPes() * vm.getMips();
+        if ((used[0] + vmTotalMips) / targetHost.getTotalMips() < THRESHOLD
+                && (used[1] + vm.getRam()) / targetHost.getRam() < THRESHOLD) {
+            used[0] += vmTotalMips;
+            used[1] += vm.getRam();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link RandomStream}.
+ *
+ * @since       1.2
+ */
+public class RandomStreamTest {
+
+    @Test
+    public void sameSeedGivesSameSequence() {
+        RandomStream a = new RandomStream(42);
+        RandomStream b = new RandomStream(42);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(a.nextLong(), b.nextLong());
+        }
+    }
+
+    @Test
+    public void childStreamsDoNotDependOnTheParentState() {
+        RandomStream parent = new RandomStream(42);
+        long expected = parent.split("customer").nextLong();
+        parent.nextLong();
+        assertEquals(expected, parent.split("customer").nextLong());
+    }
+
+    @Test
+    public void namesWithCollidingHashCodesGetDifferentStreams() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        RandomStream parent = new RandomStream(42);
+        assertFalse(parent.split("Aa").nextLong() == parent.split("BB").nextLong());
+        assertFalse(parent.split("AaAa").nextLong() == parent.split("BBBB").nextLong());
+        assertFalse(parent.split("").nextLong() == parent.split("\u0000").nextLong());
+    }
+
+    @Test
+    public void repetitionSeedsUseTheStreamMixer() {
+        assertEquals(new RandomStream(7).nextLong(), RandomNumberGenerator.getRepetitionSeed(7, 1));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2010-2012 Thiago T. Sá
+ *
+ * This file is part of CloudReports.
+ *
+ * CloudReports is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CloudReports is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * For more information about your rights as a user of CloudReports,
+ * refer to the LICENSE file or see <http://www.gnu.org/licenses/>.
+ */
+
+package cloudreports.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link TimeSeries} keeps the same samples as a
+ * <code>TreeMap&lt;Double, Double&gt;</code> and that its Largest-Triangle-
+ * Three-Buckets down-sampling picks the same samples as a plain list-based
+ * version of the algorithm.
+ *
+ * @since       1.2
+ */
+public class TimeSeriesTest {
+
+    @Test
+    public void addMatchesTreeMap() {
+        Random random = new Random(42);
+        TimeSeries series = new TimeSeries(4);
+        TreeMap<Double, Double> map = new TreeMap<Double, Double>();
+
+        for (int i = 0; i < 5000; i++) {
+            //Mostly increasing times, with some repeated and out of order ones
+            double time = random.nextInt(10) == 0 ? random.nextInt(i + 1) : i;
+            double value = random.nextDouble();
+            series.add(time, value);
+            map.put(time, value);
+        }
+
+        assertEquals(map, series.toTreeMap());
+        assertEquals(map.size(), series.size());
+    }
+
+    @Test
+    public void shortSeriesAreNotDownsampled() {
+        TimeSeries series = createSeries(new Random(42), 100);
+        assertSame(series, series.downsample(100));
+        assertSame(series, series.downsample(1000));
+        assertSame(series, series.downsample(2));
+    }
+
+    @Test
+    public void downsampleMatchesScan() {
+        Random random = new Random(42);
+        for (int size = 3; size < 300; size += 7) {
+            TimeSeries series = createSeries(random, size);
+            for (int threshold = 3; threshold < size; threshold += 5) {
+                assertEquals("size " + size + ", threshold " + threshold,
+                        scan(series, threshold), series.downsample(threshold).toTreeMap());
+            }
+        }
+    }
+
+    @Test
+    public void downsampleKeepsEndsAndPeaks() {
+        TimeSeries series = new TimeSeries();
+        for (int i = 0; i < 1000; i++) {
+            series.add(i, i == 500 ? 100 : 1);
+        }
+
+        TimeSeries sampled = series.downsample(10);
+        assertEquals(10, sampled.size());
+        assertEquals(0, sampled.getTime(0), 0);
+        assertEquals(999, sampled.getTime(9), 0);
+        assertTrue(sampled.toTreeMap().containsValue(100.0));
+    }
+
+    private static TimeSeries createSeries(Random random, int size) {
+        TimeSeries series = new TimeSeries();
+        double time = 0;
+        for (int i = 0; i < size; i++) {
+            time += 1 + random.nextInt(300);
+            series.add(time, random.nextDouble() * 100);
+        }
+        return series;
+    }
+
+    /**
+     * Down-samples the samples of a series with Largest-Triangle-Three-Buckets,
+     * scanning lists of the samples.
+     */
+    private static TreeMap<Double, Double> scan(TimeSeries series, int threshold) {
+        List<Double> times = new ArrayList<Double>();
+        List<Double> values = new ArrayList<Double>();
+        for (Map.Entry<Double, Double> entry : series.toTreeMap().entrySet()) {
+            times.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+
+        int size = times.size();
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        TreeMap<Double, Double> sampled = new TreeMap<Double, Double>();
+        sampled.put(times.get(0), values.get(0));
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+
+            //The third point is the average of the next bucket, or the last sample
+            double averageTime = times.get(size - 1);
+            double averageValue = values.get(size - 1);
+            if (nextEnd > end) {
+                averageTime = 0;
+                averageValue = 0;
+                for (int j = end; j < nextEnd; j++) {
+                    averageTime += times.get(j);
+                    averageValue += values.get(j);
+                }
+                averageTime /= nextEnd - end;
+                averageValue /= nextEnd - end;
+            }
+
+            int selected = start;
+            double maxArea = -1;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((times.get(a) - averageTime) * (values.get(j) - values.get(a))
+                                     - (times.get(a) - times.get(j)) * (averageValue - values.get(a)));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = j;
+                }
+            }
+            sampled.put(times.get(selected), values.get(selected));
+            a = selected;
+        }
+        sampled.put(times.get(size - 1), values.get(size - 1));
+        return sampled;
+    }
+}